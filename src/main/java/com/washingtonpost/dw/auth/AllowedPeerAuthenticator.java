@@ -1,14 +1,24 @@
 package com.washingtonpost.dw.auth;
 
-import com.google.common.collect.Collections2;
-import com.google.common.collect.ImmutableSet;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.collect.Maps;
+import com.washingtonpost.dw.auth.cache.VerifiedCredentialCache;
 import com.washingtonpost.dw.auth.dao.PeerDAO;
 import com.washingtonpost.dw.auth.model.Peer;
+import com.washingtonpost.dw.auth.model.PeerChange;
 import io.dropwizard.auth.AuthenticationException;
 import io.dropwizard.auth.Authenticator;
 import io.dropwizard.auth.basic.BasicCredentials;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 import org.jasypt.util.password.PasswordEncryptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,69 +27,216 @@ import org.slf4j.LoggerFactory;
 /**
  * <p>Implementation of a DropWizard Authenticator interface that forces the our callers to authenticate with us via Basic
  * Auth.</p>
+ * <p>Peers may have more than one valid password (see {@link Peer#getPasswords()}).  Rather than always checking those in
+ * their configured order, the authenticator remembers which password each peer most recently authenticated with and tries
+ * that one first, so that during a credential rotation the typical request still costs a single password check.  The number
+ * of passwords checked before a match is recorded in the {@code candidates-per-match} histogram, and matches against any
+ * password other than a peer's primary one are counted in the {@code secondary-password-matches} meter; once the latter stays
+ * at zero the old passwords can be retired.</p>
+ * <p>If given a {@link VerifiedCredentialCache}, passwords that the cache has already seen verified against a peer's current
+ * encrypted password are accepted without running the password encryptor again; those are counted in the
+ * {@code warm-cache-hits} meter.</p>
+ * <p>If the PeerDAO supports subscriptions, the authenticator applies each added, updated or removed peer to its live index
+ * in place, drops only that peer's entries from the verified credential cache, and then passes the change on to its own
+ * listeners (see {@link #addPeerChangeListener}) so they can invalidate anything else they hold for that peer.</p>
+ * <p>Every call is counted in the {@code authentications} meter, and every use of the password encryptor is timed in the
+ * {@code password-checks} timer, from which {@code AuthCapacityEstimator} works out how much hashing capacity is left.</p>
  */
 public class AllowedPeerAuthenticator implements Authenticator<BasicCredentials, Peer> {
     private static final Logger LOGGER = LoggerFactory.getLogger(AllowedPeerAuthenticator.class);
-    private final Set<Peer> allPeers;
+    private final Map<String, PeerEntry> peersByName;
     private final PasswordEncryptor passwordEncryptor;
+    private final Histogram candidatesPerMatch;
+    private final Meter secondaryPasswordMatches;
+    private final Meter warmCacheHits;
+    private final Meter authentications;
+    private final Timer passwordChecks;
+    private final VerifiedCredentialCache verifiedCredentialCache;
+    private final List<Consumer<PeerChange>> peerChangeListeners = new CopyOnWriteArrayList<>();
+    private final boolean followingPeerChanges;
 
     public AllowedPeerAuthenticator(PeerDAO peerDAO, PasswordEncryptor passwordEncryptor) {
-        this.allPeers = peerDAO.findAll();
+        this(peerDAO, passwordEncryptor, new MetricRegistry());
+    }
+
+    /**
+     * @param peerDAO The source of all allowed peers
+     * @param passwordEncryptor The encryptor used to check passwords, or null if the peers' passwords are in plaintext
+     * @param metrics A metrics registry to record password-matching statistics in
+     */
+    public AllowedPeerAuthenticator(PeerDAO peerDAO, PasswordEncryptor passwordEncryptor, MetricRegistry metrics) {
+        this(peerDAO, passwordEncryptor, metrics, null);
+    }
+
+    /**
+     * @param peerDAO The source of all allowed peers
+     * @param passwordEncryptor The encryptor used to check passwords, or null if the peers' passwords are in plaintext
+     * @param metrics A metrics registry to record password-matching statistics in
+     * @param verifiedCredentialCache A cache of already-verified passwords to consult before the (non-null)
+     * {@code passwordEncryptor}, or null to always use the encryptor.  Entries for peers or passwords that no longer exist
+     * are dropped from it.
+     */
+    public AllowedPeerAuthenticator(PeerDAO peerDAO, PasswordEncryptor passwordEncryptor, MetricRegistry metrics,
+                                    VerifiedCredentialCache verifiedCredentialCache) {
+        this.peersByName = new ConcurrentHashMap<>();
+        peerDAO.findAll().forEach((peer) -> this.peersByName.put(peer.getName(), new PeerEntry(peer)));
         this.passwordEncryptor = passwordEncryptor;
-        LOGGER.info("Constructed Authenticator with {} allowed peers", this.allPeers.size());
+        this.candidatesPerMatch = metrics.histogram(MetricRegistry.name(AllowedPeerAuthenticator.class, "candidates-per-match"));
+        this.secondaryPasswordMatches = metrics.meter(
+                MetricRegistry.name(AllowedPeerAuthenticator.class, "secondary-password-matches"));
+        this.warmCacheHits = metrics.meter(MetricRegistry.name(AllowedPeerAuthenticator.class, "warm-cache-hits"));
+        this.authentications = metrics.meter(MetricRegistry.name(AllowedPeerAuthenticator.class, "authentications"));
+        this.passwordChecks = metrics.timer(MetricRegistry.name(AllowedPeerAuthenticator.class, "password-checks"));
+        this.verifiedCredentialCache = (passwordEncryptor == null) ? null : verifiedCredentialCache;
+        if (this.verifiedCredentialCache != null) {
+            this.verifiedCredentialCache.retainAll(
+                    Maps.transformValues(this.peersByName, (entry) -> entry.peer.getPasswords()));
+        }
+        LOGGER.info("Constructed Authenticator with {} allowed peers", this.peersByName.size());
+        this.followingPeerChanges = peerDAO.subscribe(this::applyPeerChange);
+        if (this.followingPeerChanges) {
+            LOGGER.info("Subscribed to peer changes");
+        }
+    }
+
+    /**
+     * @param name The name of a peer
+     * @return True if a peer of that name is currently allowed
+     */
+    public boolean isAllowedPeer(String name) {
+        return this.peersByName.containsKey(name);
+    }
+
+    /**
+     * @param peer A peer this authenticator returned
+     * @return True if {@code peer} is still the allowed peer of that name, i.e. it hasn't since been updated or removed
+     */
+    public boolean isCurrent(Peer peer) {
+        PeerEntry entry = this.peersByName.get(peer.getName());
+        return entry != null && entry.peer == peer;
+    }
+
+    /**
+     * @return True if peer changes from the PeerDAO are applied as they happen, so peers may yet be added or removed
+     */
+    public boolean isFollowingPeerChanges() {
+        return this.followingPeerChanges;
+    }
+
+    /**
+     * @return The meter counting every call to {@code authenticate}
+     */
+    public Meter getAuthentications() {
+        return this.authentications;
+    }
+
+    /**
+     * @return The timer timing every use of the password encryptor
+     */
+    public Timer getPasswordChecks() {
+        return this.passwordChecks;
+    }
+
+    /**
+     * @param listener Called with each peer change after it has been applied to this authenticator
+     */
+    public void addPeerChangeListener(Consumer<PeerChange> listener) {
+        this.peerChangeListeners.add(listener);
+    }
+
+    /**
+     * Applies {@code change} to the live peer index and invalidates whatever was held for the changed peer
+     * @param change A change to the set of allowed peers
+     */
+    public void applyPeerChange(PeerChange change) {
+        if (change.getType() == PeerChange.Type.REMOVE) {
+            this.peersByName.remove(change.getName());
+        }
+        else {
+            this.peersByName.put(change.getName(), new PeerEntry(change.getPeer()));
+        }
+        if (this.verifiedCredentialCache != null) {
+            this.verifiedCredentialCache.invalidate(change.getName());
+        }
+        this.peerChangeListeners.forEach((listener) -> listener.accept(change));
+        LOGGER.info("Applied {}; {} allowed peers", change, this.peersByName.size());
     }
 
 
     @Override
     public Optional<Peer> authenticate(BasicCredentials credentials) throws AuthenticationException {
-        if (this.passwordEncryptor == null) {
-            return authenticateUnencrypted(credentials);
+        this.authentications.mark();
+        PeerEntry entry = this.peersByName.get(credentials.getUsername());
+        if (entry == null) {
+            LOGGER.debug("No peer named {} found in our allowed-peers file", credentials.getUsername());
+            return Optional.empty();
         }
-        else {
-            return authenticateEncrypted(credentials);
+
+        List<String> passwords = entry.peer.getPasswords();
+        if (this.verifiedCredentialCache != null
+                && this.verifiedCredentialCache.isVerified(entry.peer.getName(), credentials.getPassword(), passwords)) {
+            this.warmCacheHits.mark();
+            LOGGER.debug("{} authenticated from the verified credential cache", credentials.getUsername());
+            return Optional.of(entry.peer);
+        }
+
+        int preferred = entry.lastMatched;
+        int candidates = 0;
+        for (int i = -1; i < passwords.size(); i++) {
+            // the most recently matched password goes first, then the rest in their configured order
+            int index = (i == -1) ? preferred : i;
+            if (i == preferred) {
+                continue;
+            }
+            candidates++;
+            if (passwordMatches(credentials.getPassword(), passwords.get(index))) {
+                recordMatch(entry, index, candidates);
+                if (this.verifiedCredentialCache != null) {
+                    this.verifiedCredentialCache.recordVerified(entry.peer.getName(), credentials.getPassword(),
+                                                                passwords.get(index));
+                }
+                LOGGER.debug("{} authenticated and allowed to request service", credentials.getUsername());
+                return Optional.of(entry.peer);
+            }
         }
+        LOGGER.debug("{} is not known in our list of allowed peers", credentials.getUsername());
+        return Optional.empty();
     }
 
     /*
     If we're configured with a null {@code PasswordEncryptor}, assume our allowed-peers.properties contains a bunch of
-    plaintext passwords, so just do a normal .equals comparison between {@code credentials} and {@code allPeers}
+    plaintext passwords, so just do a normal .equals comparison.  Otherwise use the `checkPassword` function to make sure the
+    encrypted version of {@code plainPassword} matches the assumed-encrypted property in our allowed-peers.properties file
     */
-    private Optional<Peer> authenticateUnencrypted(BasicCredentials credentials) throws AuthenticationException {
-        Peer peer = new Peer(credentials.getUsername(), credentials.getPassword());
+    private boolean passwordMatches(String plainPassword, String storedPassword) {
+        if (this.passwordEncryptor == null) {
+            return Objects.equals(plainPassword, storedPassword);
+        }
+        try (Timer.Context context = this.passwordChecks.time()) {
+            return this.passwordEncryptor.checkPassword(plainPassword, storedPassword);
+        }
+    }
 
-        if (this.allPeers.contains(peer)) {
-            LOGGER.debug("{} authenticated and allowed to request service", credentials.getUsername());
-            return Optional.of(peer);
+    private void recordMatch(PeerEntry entry, int index, int candidates) {
+        if (entry.lastMatched != index) {
+            entry.lastMatched = index;
         }
-        else {
-            LOGGER.debug("{} is not known in our list of allowed peers", credentials.getUsername());
+        this.candidatesPerMatch.update(candidates);
+        if (index != 0) {
+            this.secondaryPasswordMatches.mark();
         }
-        return Optional.empty();
     }
 
     /*
-    If we're configured with a non-null {@code PasswordEncryptor}, use the `checkPassword` function to make sure the
-    encrypted version of {@code credentials.getPassword()} matches the assumed-encrypted property in our
-    allowed-peers.properties file
+    An allowed peer, plus the index of the password it most recently authenticated with.  That index is only a hint for
+    ordering password checks, so a racy (but always in-range) read of it is harmless.
     */
-    private Optional<Peer> authenticateEncrypted(BasicCredentials credentials) {
-        Set<Peer> peers = ImmutableSet.<Peer>copyOf(
-            Collections2.filter(allPeers, (Peer p) -> p.getName().equals(credentials.getUsername())));
+    private static final class PeerEntry {
+        private final Peer peer;
+        private volatile int lastMatched;
 
-        if (peers.isEmpty()) {
-            LOGGER.debug("No peer named {} found in our allowed-peers file", credentials.getUsername());
-            return Optional.empty();
-        }
-        else {
-            Peer peer = peers.stream().findFirst().get();
-            if (this.passwordEncryptor.checkPassword(credentials.getPassword(), peer.getPassword())) {
-                LOGGER.debug("{} authenticated and allowed to request service", credentials.getUsername());
-                return Optional.of(peer);
-            }
-            else {
-                LOGGER.debug("{} is not known in our list of allowed peers", credentials.getUsername());
-                return Optional.empty();
-            }
+        private PeerEntry(Peer peer) {
+            this.peer = peer;
         }
     }
 }
@@ -1,13 +1,28 @@
 package com.washingtonpost.dw.auth;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metered;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.Preconditions;
 import com.google.common.cache.CacheBuilderSpec;
 import static com.washingtonpost.dw.auth.AllowedPeerConfiguration.Encryptor.NONE;
+import com.washingtonpost.dw.auth.cache.VerifiedCredentialCache;
+import com.washingtonpost.dw.auth.capacity.AuthCapacityEstimator;
+import com.washingtonpost.dw.auth.capacity.AuthCapacityHealthCheck;
+import com.washingtonpost.dw.auth.capacity.AuthCapacityTask;
+import com.washingtonpost.dw.auth.capacity.MeteredAuthenticator;
+import com.washingtonpost.dw.auth.dao.ChangeLogPeerDAO;
 import com.washingtonpost.dw.auth.dao.FlatFilePeerDAO;
+import com.washingtonpost.dw.auth.dao.PeerDAO;
 import com.washingtonpost.dw.auth.dao.StringPeerDAO;
 import com.washingtonpost.dw.auth.model.Peer;
+import com.washingtonpost.dw.auth.quota.QuotaEnforcingAuthenticator;
+import com.washingtonpost.dw.auth.realm.RealmAuthenticator;
+import com.washingtonpost.dw.auth.realm.RealmRoutingAuthFilter;
+import com.washingtonpost.dw.auth.shadow.ShadowSamplingAuthenticator;
+import com.washingtonpost.dw.auth.shadow.ShadowVerifier;
 import io.dropwizard.auth.AuthDynamicFeature;
 import io.dropwizard.auth.AuthValueFactoryProvider;
 import io.dropwizard.auth.Authenticator;
@@ -16,12 +31,21 @@ import io.dropwizard.auth.CachingAuthenticator;
 import io.dropwizard.auth.PermitAllAuthorizer;
 import io.dropwizard.auth.basic.BasicCredentialAuthFilter;
 import io.dropwizard.auth.basic.BasicCredentials;
+import io.dropwizard.lifecycle.Managed;
 import io.dropwizard.setup.Environment;
+import io.dropwizard.util.Duration;
 import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.ws.rs.container.ContainerRequestFilter;
 import org.glassfish.jersey.server.filter.RolesAllowedDynamicFeature;
 import org.jasypt.util.password.BasicPasswordEncryptor;
 import org.jasypt.util.password.PasswordEncryptor;
 import org.jasypt.util.password.StrongPasswordEncryptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * <p>Container for configuration, in the "config + factory" pattern that DropWizard likes</p>
@@ -29,16 +53,40 @@ import org.jasypt.util.password.StrongPasswordEncryptor;
  * <ol>
  *   <li>If a "credentialFile" is specified (i.e. non-null), the usernames and passwords of the allowed peers will be read
  * from that file</li>
+ *   <li>If instead a "changeLogFile" is specified, the allowed peers are read from that append-only change log, and any
+ * changes later appended to it are applied to the running Authenticator (see {@code ChangeLogPeerDAO})</li>
  *   <li>If instead the "users" and "passwords" strings are specified (i.e. non-null), then those strings are split up
  * with whatever value is specified by the "delimited" property and the token (user, password)s are used as the list of
  * allowed peers.  By default, the delimiter is ";", so if {@code users="bob;alice"} and {@code passwords="foo;bar"} then
  * the list of allowed peers would contain "user bob with password foo" and "user alice with password bar"</li>
  * </ol>
- * <p>If a cachePolicy is set, then the Authenticator that is registered with Jersey upon calling {@code registerAuthenticator}
- * will be a CachingAuthenticator.  Otherwise, it'll be an instance of {@code AllowedPeerAuthenticator}</p>
+ * <p>The Authenticator that is registered with Jersey upon calling {@code registerAuthenticator} is always a chain, from the
+ * outside in, of:</p>
+ * <ol>
+ *   <li>a {@code QuotaEnforcingAuthenticator}, even if no quota is set (every peer is then unlimited)</li>
+ *   <li>a {@code MeteredAuthenticator}, counting every request that reaches the quota check for the capacity health check</li>
+ *   <li>a {@code ShadowSamplingAuthenticator}, if a "shadow" configuration is set</li>
+ *   <li>a {@code CurrentPeerAuthenticator} and a CachingAuthenticator, if a cachePolicy is set</li>
+ *   <li>the {@code AllowedPeerAuthenticator}</li>
+ * </ol>
+ * <p>with a {@code RealmAuthenticator} in front of the chain for each of the "realms" that names its peers.</p>
+ * <p>If a warmCacheFile is set (and the encryptor isn't NONE), already-verified credentials are remembered in a
+ * {@code VerifiedCredentialCache} that {@code registerAuthenticator} reloads from that file at startup and saves back to it at
+ * shutdown.</p>
+ * <p>Peers registered with {@code registerAuthenticator} are held to their own quota of requests per second (from the
+ * "quotaFile" or the change log) or to the "defaultQuota", if either is set; requests over quota get a 429 response.</p>
+ * <p>Additional "realms" bind resource path prefixes to their own BasicAuth realm and subset of the allowed peers.  All realms
+ * share the one authenticator (peer index, encryptor, caches and quotas) built by {@code registerAuthenticator}.</p>
+ * <p>If a "shadow" configuration is set, a sample of authentications is also re-checked in the background against its
+ * candidate peers and encryptor, to measure a migration before making it.</p>
+ * <p>{@code registerAuthenticator} also registers a "peer-authenticator-capacity" health check and admin task that estimate
+ * the remaining authentication capacity; the health check turns unhealthy once password hashing uses more than
+ * "capacityUtilizationThreshold" of the node's cores.</p>
  */
 public class AllowedPeerConfiguration {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(AllowedPeerConfiguration.class);
+
     @JsonProperty("realm")
     private String realm = "peers";
 
@@ -48,6 +96,12 @@ public class AllowedPeerConfiguration {
     @JsonProperty("credentialFile")
     private String credentialFile;
 
+    @JsonProperty("changeLogFile")
+    private String changeLogFile;
+
+    @JsonProperty("changeLogPollInterval")
+    private Duration changeLogPollInterval = Duration.seconds(1);
+
     @JsonProperty("users")
     private String users;
 
@@ -61,6 +115,27 @@ public class AllowedPeerConfiguration {
     @JsonProperty("encryptor")
     private Encryptor encryptor = NONE;
 
+    @JsonProperty("warmCacheFile")
+    private String warmCacheFile;
+
+    @JsonProperty("warmCacheKeyFile")
+    private String warmCacheKeyFile;
+
+    @JsonProperty("quotaFile")
+    private String quotaFile;
+
+    @JsonProperty("defaultQuota")
+    private Integer defaultQuota;
+
+    @JsonProperty("realms")
+    private List<RealmConfiguration> realms = new ArrayList<>();
+
+    @JsonProperty("shadow")
+    private ShadowConfiguration shadow;
+
+    @JsonProperty("capacityUtilizationThreshold")
+    private double capacityUtilizationThreshold = 0.8;
+
     /**
      * Types of Jasypt PasswordEncryptors this PeerConfiguration supports
      */
@@ -111,6 +186,35 @@ public class AllowedPeerConfiguration {
         this.credentialFile = credentialFile;
     }
 
+    /**
+     * @return The file system path of an append-only change log of allowed peers, as read by {@code ChangeLogPeerDAO}
+     */
+    public String getChangeLogFile() {
+        return changeLogFile;
+    }
+
+    /**
+     * @param changeLogFile The file system path of an append-only change log of allowed peers, as read by
+     * {@code ChangeLogPeerDAO}.  Changes appended to it are applied without rebuilding the Authenticator.
+     */
+    public void setChangeLogFile(String changeLogFile) {
+        this.changeLogFile = changeLogFile;
+    }
+
+    /**
+     * @return How often the changeLogFile is polled for appended changes.  Defaults to 1 second.
+     */
+    public Duration getChangeLogPollInterval() {
+        return changeLogPollInterval;
+    }
+
+    /**
+     * @param changeLogPollInterval How often the changeLogFile is polled for appended changes.  Defaults to 1 second.
+     */
+    public void setChangeLogPollInterval(Duration changeLogPollInterval) {
+        this.changeLogPollInterval = changeLogPollInterval;
+    }
+
     /**
      * @return A String conforming to Guava's CacheBuilderSpec that is used if/when returning a CachingAuthenticator.
      */
@@ -185,38 +289,195 @@ public class AllowedPeerConfiguration {
         this.encryptor = encryptor;
     }
 
+    /**
+     * @return The file system path of the encrypted snapshot of already-verified credentials, or null (the default) if that
+     * snapshot isn't kept
+     */
+    public String getWarmCacheFile() {
+        return warmCacheFile;
+    }
+
+    /**
+     * @param warmCacheFile The file system path of the encrypted snapshot of already-verified credentials that is loaded at
+     * startup and saved at shutdown, so a restarted service doesn't have to re-verify every caller with the encryptor.
+     */
+    public void setWarmCacheFile(String warmCacheFile) {
+        this.warmCacheFile = warmCacheFile;
+    }
+
+    /**
+     * @return The file system path of the key protecting the warmCacheFile.  Defaults to the warmCacheFile with a ".key"
+     * suffix.
+     */
+    public String getWarmCacheKeyFile() {
+        return warmCacheKeyFile;
+    }
+
+    /**
+     * @param warmCacheKeyFile The file system path of the key protecting the warmCacheFile; a new key is generated there if
+     * the file doesn't exist.  Defaults to the warmCacheFile with a ".key" suffix.
+     */
+    public void setWarmCacheKeyFile(String warmCacheKeyFile) {
+        this.warmCacheKeyFile = warmCacheKeyFile;
+    }
+
+    /**
+     * @return The classpath-relative name of a properties file holding (user=requestsPerSecond) quotas for peers of the
+     * credentialFile
+     */
+    public String getQuotaFile() {
+        return quotaFile;
+    }
+
+    /**
+     * @param quotaFile The classpath-relative name of a properties file holding (user=requestsPerSecond) quotas for peers of
+     * the credentialFile.  Every user in it must be in the credentialFile.
+     */
+    public void setQuotaFile(String quotaFile) {
+        this.quotaFile = quotaFile;
+    }
+
+    /**
+     * @return The number of requests per second allowed to each peer that doesn't have a quota of its own, or null (the
+     * default) for no limit
+     */
+    public Integer getDefaultQuota() {
+        return defaultQuota;
+    }
+
+    /**
+     * @param defaultQuota The number of requests per second allowed to each peer that doesn't have a quota of its own, or
+     * null for no limit.  Must be positive; {@code registerAuthenticator} fails otherwise.
+     */
+    public void setDefaultQuota(Integer defaultQuota) {
+        this.defaultQuota = defaultQuota;
+    }
+
+    /**
+     * @return Additional realms, each protecting the resources under its path prefix; requests to any other path are
+     * authenticated in the default "realm" against all allowed peers
+     */
+    public List<RealmConfiguration> getRealms() {
+        return realms;
+    }
+
+    /**
+     * @param realms Additional realms, each protecting the resources under its path prefix with its own subset of the
+     * allowed peers.  Requests to any other path are authenticated in the default "realm" against all allowed peers.
+     */
+    public void setRealms(List<RealmConfiguration> realms) {
+        this.realms = realms;
+    }
+
+    /**
+     * @return The shadow verification configuration, or null (the default) for no shadow verification
+     */
+    public ShadowConfiguration getShadow() {
+        return shadow;
+    }
+
+    /**
+     * @param shadow The candidate peers and encryptor that a sample of authentications is re-checked against in the
+     * background, or null for no shadow verification
+     */
+    public void setShadow(ShadowConfiguration shadow) {
+        this.shadow = shadow;
+    }
+
+    /**
+     * @return The share, between 0 and 1, of the node's password hashing capacity above which the capacity health check is
+     * unhealthy.  Defaults to 0.8.
+     */
+    public double getCapacityUtilizationThreshold() {
+        return capacityUtilizationThreshold;
+    }
+
+    /**
+     * @param capacityUtilizationThreshold The share, between 0 and 1, of the node's password hashing capacity above which the
+     * capacity health check is unhealthy
+     */
+    public void setCapacityUtilizationThreshold(double capacityUtilizationThreshold) {
+        this.capacityUtilizationThreshold = capacityUtilizationThreshold;
+    }
+
     /**
      * <p>If a credentialFile is provided, this method will use that file to populate the list of Peers the Authenticator
-     * checks during request processing.  If instead the "users" and "passwords" Strings are provided, this method will use
-     * those to populate the list of Peers.</p>
+     * checks during request processing.  If instead a changeLogFile is provided, the Peers are read from, and kept up to date
+     * with, that change log.  If instead the "users" and "passwords" Strings are provided, this method will use those to
+     * populate the list of Peers.</p>
      * @return An Authenticator appropriate for registering with Jersey as described
      * https://dropwizard.github.io/dropwizard/manual/auth.html
      */
     public Authenticator<BasicCredentials, Peer> createAuthenticator() {
-        PasswordEncryptor passwordEncryptor = encryptor.getPasswordEncryptor();
+        return createAuthenticator(new MetricRegistry());
+    }
+
+    /**
+     * <p>Only {@code registerAuthenticator} can manage the lifecycle of the warm verification cache, the change log poller
+     * and the shadow verifier, so the Authenticator built here goes without them: a "warmCacheFile" and a "shadow"
+     * configuration are ignored, and a "changeLogFile" is read once rather than followed.</p>
+     * @param metrics A metrics registry the Authenticator records its password-matching statistics in
+     * @return An Authenticator built as described in {@code createAuthenticator()}
+     */
+    public Authenticator<BasicCredentials, Peer> createAuthenticator(MetricRegistry metrics) {
+        if (this.warmCacheFile != null || this.shadow != null || this.changeLogFile != null) {
+            LOGGER.warn("warmCacheFile, shadow and changeLogFile following are only supported by registerAuthenticator; "
+                    + "ignoring them");
+        }
+        PeerDAO peerDAO = createPeerDAO();
+        // a snapshot of the peers that never subscribes, so no poller is left running
+        return createAuthenticator(metrics, peerDAO::findAll, null);
+    }
+
+    private AllowedPeerAuthenticator createAuthenticator(MetricRegistry metrics, PeerDAO peerDAO,
+                                                         VerifiedCredentialCache verifiedCredentialCache) {
+        return new AllowedPeerAuthenticator(peerDAO, encryptor.getPasswordEncryptor(), metrics, verifiedCredentialCache);
+    }
+
+    private ShadowVerifier createShadowVerifier(MetricRegistry metrics) {
+        return (this.shadow == null) ? null : this.shadow.createShadowVerifier(metrics);
+    }
+
+    private PeerDAO createPeerDAO() {
         if (this.credentialFile != null) {
             InputStream allowedPeersResource = this.getClass().getClassLoader().getResourceAsStream(this.credentialFile);
-            return new AllowedPeerAuthenticator(new FlatFilePeerDAO(allowedPeersResource),
-                                                passwordEncryptor);
+            InputStream quotasResource = (this.quotaFile == null)
+                    ? null
+                    : this.getClass().getClassLoader().getResourceAsStream(this.quotaFile);
+            return new FlatFilePeerDAO(allowedPeersResource, quotasResource);
+        }
+        else if (this.changeLogFile != null) {
+            return new ChangeLogPeerDAO(Paths.get(this.changeLogFile), this.changeLogPollInterval.toMilliseconds());
         }
         else if (this.users != null && this.passwords != null && this.delimiter != null) {
-            return new AllowedPeerAuthenticator(new StringPeerDAO(this.users, this.passwords, this.delimiter),
-                                                passwordEncryptor);
+            return new StringPeerDAO(this.users, this.passwords, this.delimiter);
         }
         else {
             throw new IllegalStateException("Illegal call to createAuthenticator() when no valid configuration was set");
         }
     }
 
+    /*
+    Only build a VerifiedCredentialCache if one's been asked for and there's an encryptor whose work it can save
+    */
+    private VerifiedCredentialCache createVerifiedCredentialCache() {
+        if (this.warmCacheFile == null || this.encryptor == NONE) {
+            return null;
+        }
+        String keyFile = (this.warmCacheKeyFile != null) ? this.warmCacheKeyFile : this.warmCacheFile + ".key";
+        return new VerifiedCredentialCache(Paths.get(this.warmCacheFile), Paths.get(keyFile));
+    }
+
     /**
      * @param metrics A metrics registry
-     * @return The Authenticator you'd get by calling {@code createAuthenticator} directly, but wrapped in the Dropwizard
-     * CachingAuthenticator proxy with this configuration object's {@code cachePolicy} applied to it.
+     * @return The Authenticator you'd get by calling {@code createAuthenticator} directly (so without the warm verification
+     * cache, change log following or shadow verification), but wrapped in the Dropwizard CachingAuthenticator proxy with this
+     * configuration object's {@code cachePolicy} applied to it.
      */
     public CachingAuthenticator<BasicCredentials, Peer> createCachingAuthenticator(MetricRegistry metrics) {
         Preconditions.checkNotNull(this.cachePolicy, "Illegal call to createCachingAuthenticator() when the configuration "
                 + "object's cachePolicy attribute is null");
-        return new CachingAuthenticator<>(metrics, createAuthenticator(), this.cachePolicy);
+        return new CachingAuthenticator<>(metrics, createAuthenticator(metrics), this.cachePolicy);
     }
 
     /**
@@ -235,20 +496,107 @@ public class AllowedPeerConfiguration {
      */
     public void registerAuthenticator(Environment environment, Authorizer<Peer> authorizer) {
         Preconditions.checkNotNull(environment, "Illegal call to registerAuthenticator with a null Environment object");
-        Authenticator<BasicCredentials, Peer> authenticator;
+        VerifiedCredentialCache verifiedCredentialCache = createVerifiedCredentialCache();
+        if (verifiedCredentialCache != null) {
+            environment.lifecycle().manage(verifiedCredentialCache);
+        }
+        PeerDAO peerDAO = createPeerDAO();
+        if (peerDAO instanceof Managed) {
+            environment.lifecycle().manage((Managed) peerDAO);
+        }
+        ShadowVerifier shadowVerifier = createShadowVerifier(environment.metrics());
+        if (shadowVerifier != null) {
+            environment.lifecycle().manage(shadowVerifier);
+        }
+        AllowedPeerAuthenticator allowedPeerAuthenticator = createAuthenticator(environment.metrics(), peerDAO,
+                                                                                verifiedCredentialCache);
+        Authenticator<BasicCredentials, Peer> authenticator = allowedPeerAuthenticator;
         if (this.cachePolicy != null) {
-            authenticator = createCachingAuthenticator(environment.metrics());
+            CachingAuthenticator<BasicCredentials, Peer> cachingAuthenticator =
+                    new CachingAuthenticator<>(environment.metrics(), authenticator, this.cachePolicy);
+            // when a peer changes, only its own cached credentials are dropped
+            allowedPeerAuthenticator.addPeerChangeListener((change) -> cachingAuthenticator.invalidateAll(
+                    (BasicCredentials credentials) -> credentials.getUsername().equals(change.getName())));
+            // ...and any a request in flight during the change puts back are caught on their way out of the cache
+            authenticator = new CurrentPeerAuthenticator(cachingAuthenticator, allowedPeerAuthenticator);
         }
-        else {
-            authenticator = createAuthenticator();
-        }
-        environment.jersey().register(new AuthDynamicFeature(
-            new BasicCredentialAuthFilter.Builder<Peer>()
-                .setAuthenticator(authenticator)
-                .setAuthorizer(authorizer)
-                .setRealm(this.realm)
-                .buildAuthFilter()));
+        if (shadowVerifier != null) {
+            // sampled in front of the cache, so cache hits (and so low-traffic peers) are sampled too
+            authenticator = new ShadowSamplingAuthenticator(authenticator, shadowVerifier);
+        }
+        // every request that reaches the quota check, for the capacity estimate: the quota is only checked once the inner
+        // authenticate returns, so this counts requests then rejected with a 429 too, which were hashed all the same
+        Meter requests = environment.metrics().meter(MetricRegistry.name(AuthCapacityEstimator.class, "requests"));
+        authenticator = new MeteredAuthenticator(authenticator, requests);
+        QuotaEnforcingAuthenticator quotaEnforcingAuthenticator =
+                new QuotaEnforcingAuthenticator(authenticator, this.defaultQuota);
+        allowedPeerAuthenticator.addPeerChangeListener((change) -> quotaEnforcingAuthenticator.invalidate(change.getName()));
+        authenticator = quotaEnforcingAuthenticator;
+
+        ContainerRequestFilter authFilter = buildAuthFilter(authenticator, authorizer, this.realm);
+        if (this.realms != null && !this.realms.isEmpty()) {
+            RealmRoutingAuthFilter routingFilter = new RealmRoutingAuthFilter(authFilter);
+            for (RealmConfiguration realmConfiguration : this.realms) {
+                Preconditions.checkNotNull(realmConfiguration.getName(), "Every realm must have a name");
+                Preconditions.checkNotNull(realmConfiguration.getPathPrefix(), "Every realm must have a pathPrefix");
+                checkRealmPeers(realmConfiguration, allowedPeerAuthenticator);
+                Authenticator<BasicCredentials, Peer> realmAuthenticator = (realmConfiguration.getPeers() == null)
+                        ? authenticator
+                        : new RealmAuthenticator(authenticator, realmConfiguration.getPeers());
+                routingFilter.addRealm(realmConfiguration.getPathPrefix(),
+                                       buildAuthFilter(realmAuthenticator, authorizer, realmConfiguration.getName()));
+            }
+            authFilter = routingFilter;
+        }
+        environment.jersey().register(new AuthDynamicFeature(authFilter));
+        registerCapacityChecks(environment, requests, allowedPeerAuthenticator, shadowVerifier);
         environment.jersey().register(RolesAllowedDynamicFeature.class);
         environment.jersey().register(new AuthValueFactoryProvider.Binder<>(Peer.class));
     }
+
+    /*
+    A misspelled realm peer would silently lock that peer out of the realm, so unknown names fail startup; only a peer
+    source that follows changes may add them later, so for one of those they're just logged
+    */
+    private static void checkRealmPeers(RealmConfiguration realmConfiguration,
+                                        AllowedPeerAuthenticator allowedPeerAuthenticator) {
+        if (realmConfiguration.getPeers() == null) {
+            return;
+        }
+        List<String> unknownPeers = realmConfiguration.getPeers().stream()
+                .filter((name) -> !allowedPeerAuthenticator.isAllowedPeer(name)).collect(Collectors.toList());
+        if (unknownPeers.isEmpty()) {
+            return;
+        }
+        if (allowedPeerAuthenticator.isFollowingPeerChanges()) {
+            LOGGER.warn("Realm {} names peers {} that aren't allowed (yet)", realmConfiguration.getName(), unknownPeers);
+        }
+        else {
+            throw new IllegalStateException("Realm " + realmConfiguration.getName() + " names unknown peers " + unknownPeers);
+        }
+    }
+
+    private static ContainerRequestFilter buildAuthFilter(Authenticator<BasicCredentials, Peer> authenticator,
+                                                          Authorizer<Peer> authorizer, String realm) {
+        return new BasicCredentialAuthFilter.Builder<Peer>()
+            .setAuthenticator(authenticator)
+            .setAuthorizer(authorizer)
+            .setRealm(realm)
+            .buildAuthFilter();
+    }
+
+    /*
+    Password checks are timed by the AllowedPeerAuthenticator and shadow verification checks by the ShadowVerifier, both of
+    which hash on this node's cores
+    */
+    private void registerCapacityChecks(Environment environment, Metered requests,
+                                        AllowedPeerAuthenticator allowedPeerAuthenticator, ShadowVerifier shadowVerifier) {
+        Timer shadowChecks = (shadowVerifier == null) ? null : shadowVerifier.getChecks();
+        AuthCapacityEstimator estimator = new AuthCapacityEstimator(
+                allowedPeerAuthenticator.getPasswordChecks(), shadowChecks, requests,
+                allowedPeerAuthenticator.getAuthentications(), Runtime.getRuntime().availableProcessors());
+        environment.healthChecks().register(AuthCapacityTask.NAME,
+                                            new AuthCapacityHealthCheck(estimator, this.capacityUtilizationThreshold));
+        environment.admin().addTask(new AuthCapacityTask(estimator));
+    }
 }
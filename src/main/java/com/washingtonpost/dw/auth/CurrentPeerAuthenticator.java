@@ -0,0 +1,59 @@
+package com.washingtonpost.dw.auth;
+
+import com.google.common.base.Preconditions;
+import com.washingtonpost.dw.auth.model.Peer;
+import io.dropwizard.auth.AuthenticationException;
+import io.dropwizard.auth.Authenticator;
+import io.dropwizard.auth.CachingAuthenticator;
+import io.dropwizard.auth.basic.BasicCredentials;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Authenticator in front of a CachingAuthenticator that only lets through peers that are still current in the
+ * {@link AllowedPeerAuthenticator}'s live index.</p>
+ * <p>Invalidating a changed peer's cached credentials isn't enough on its own: a request that read the old peer just before
+ * the change, and was still checking its password when the cache was invalidated, puts the old peer back into the cache
+ * afterwards.  With an "expireAfterAccess" cache policy, a removed peer that keeps calling would then stay authenticated
+ * indefinitely.  So every cached result is checked against the live index, which costs a map lookup, and one that is no longer
+ * current is dropped from the cache and authenticated again.</p>
+ */
+public class CurrentPeerAuthenticator implements Authenticator<BasicCredentials, Peer> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CurrentPeerAuthenticator.class);
+    private final CachingAuthenticator<BasicCredentials, Peer> cachingAuthenticator;
+    private final AllowedPeerAuthenticator allowedPeerAuthenticator;
+
+    /**
+     * @param cachingAuthenticator The cache in front of {@code allowedPeerAuthenticator}
+     * @param allowedPeerAuthenticator The authenticator holding the live index of peers
+     */
+    public CurrentPeerAuthenticator(CachingAuthenticator<BasicCredentials, Peer> cachingAuthenticator,
+                                    AllowedPeerAuthenticator allowedPeerAuthenticator) {
+        Preconditions.checkNotNull(cachingAuthenticator, "The caching authenticator must not be null");
+        Preconditions.checkNotNull(allowedPeerAuthenticator, "The allowed peer authenticator must not be null");
+        this.cachingAuthenticator = cachingAuthenticator;
+        this.allowedPeerAuthenticator = allowedPeerAuthenticator;
+    }
+
+    @Override
+    public Optional<Peer> authenticate(BasicCredentials credentials) throws AuthenticationException {
+        Optional<Peer> peer = this.cachingAuthenticator.authenticate(credentials);
+        if (isStale(peer)) {
+            LOGGER.debug("Cached credentials of {} are for a peer that has since changed", credentials.getUsername());
+            this.cachingAuthenticator.invalidate(credentials);
+            peer = this.cachingAuthenticator.authenticate(credentials);
+            if (isStale(peer)) {
+                // the peer changed again while being re-checked; reject rather than trust either version
+                this.cachingAuthenticator.invalidate(credentials);
+                return Optional.empty();
+            }
+        }
+        return peer;
+    }
+
+    private boolean isStale(Optional<Peer> peer) {
+        return peer.isPresent() && !this.allowedPeerAuthenticator.isCurrent(peer.get());
+    }
+}
@@ -0,0 +1,63 @@
+package com.washingtonpost.dw.auth;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.List;
+
+/**
+ * <p>Configuration of one additional BasicAuth realm: the resource paths it protects and the subset of the allowed peers that
+ * may access them.  See {@code AllowedPeerConfiguration.setRealms}.</p>
+ */
+public class RealmConfiguration {
+
+    @JsonProperty("name")
+    private String name;
+
+    @JsonProperty("pathPrefix")
+    private String pathPrefix;
+
+    @JsonProperty("peers")
+    private List<String> peers;
+
+    /**
+     * @return BasicAuth Realm name sent in this realm's authentication challenges
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param name BasicAuth Realm name sent in this realm's authentication challenges
+     */
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return The resource path prefix, like "/admin", whose requests this realm authenticates
+     */
+    public String getPathPrefix() {
+        return pathPrefix;
+    }
+
+    /**
+     * @param pathPrefix The resource path prefix, like "/admin", whose requests this realm authenticates.  It matches whole
+     * path segments, so "/admin" matches "/admin" and "/admin/users" but not "/administrators".
+     */
+    public void setPathPrefix(String pathPrefix) {
+        this.pathPrefix = pathPrefix;
+    }
+
+    /**
+     * @return The names of the allowed peers that may access this realm, or null for all of them
+     */
+    public List<String> getPeers() {
+        return peers;
+    }
+
+    /**
+     * @param peers The names of the allowed peers that may access this realm, or null (the default) for all of them
+     */
+    public void setPeers(List<String> peers) {
+        this.peers = peers;
+    }
+}
@@ -0,0 +1,184 @@
+package com.washingtonpost.dw.auth;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.washingtonpost.dw.auth.AllowedPeerConfiguration.Encryptor;
+import static com.washingtonpost.dw.auth.AllowedPeerConfiguration.Encryptor.NONE;
+import com.washingtonpost.dw.auth.dao.FlatFilePeerDAO;
+import com.washingtonpost.dw.auth.dao.PeerDAO;
+import com.washingtonpost.dw.auth.dao.StringPeerDAO;
+import com.washingtonpost.dw.auth.shadow.ShadowVerifier;
+import java.io.InputStream;
+
+/**
+ * <p>Configuration of shadow verification: a candidate credential source and encryptor that a sampled fraction of
+ * authentications is re-checked against in the background, e.g. before switching the "encryptor" from BASIC to STRONG.
+ * See {@code ShadowVerifier}.</p>
+ * <p>The candidate peers are read from a "credentialFile" or from "users" and "passwords" strings, just like the allowed
+ * peers of {@code AllowedPeerConfiguration}.</p>
+ */
+public class ShadowConfiguration {
+
+    @JsonProperty("credentialFile")
+    private String credentialFile;
+
+    @JsonProperty("users")
+    private String users;
+
+    @JsonProperty("passwords")
+    private String passwords;
+
+    @JsonProperty("delimiter")
+    private String delimiter = ";";
+
+    @JsonProperty("encryptor")
+    private Encryptor encryptor = NONE;
+
+    @JsonProperty("sampleRate")
+    private double sampleRate = 0.01;
+
+    @JsonProperty("threads")
+    private int threads = 1;
+
+    @JsonProperty("queueSize")
+    private int queueSize = 100;
+
+    /**
+     * @return The classpath-relative name of a properties file holding the candidate (user=password) pairs
+     */
+    public String getCredentialFile() {
+        return credentialFile;
+    }
+
+    /**
+     * @param credentialFile The classpath-relative name of a properties file holding the candidate (user=password) pairs
+     */
+    public void setCredentialFile(String credentialFile) {
+        this.credentialFile = credentialFile;
+    }
+
+    /**
+     * @return A delimiter-separated list of candidate users
+     */
+    public String getUsers() {
+        return users;
+    }
+
+    /**
+     * @param users A delimiter-separated list of candidate users
+     */
+    public void setUsers(String users) {
+        this.users = users;
+    }
+
+    /**
+     * @return A delimiter-separated list of passwords associated to the candidate {@code users}
+     */
+    public String getPasswords() {
+        return passwords;
+    }
+
+    /**
+     * @param passwords A delimiter-separated list of passwords associated to the candidate {@code users}
+     */
+    public void setPasswords(String passwords) {
+        this.passwords = passwords;
+    }
+
+    /**
+     * @return The string that separates each user and each password in the {@code users} and {@code passwords} strings.
+     * This defaults to the semi-colon (";")
+     */
+    public String getDelimiter() {
+        return delimiter;
+    }
+
+    /**
+     * @param delimiter The string that separates each user and each password in the {@code users} and {@code passwords}
+     * strings. This defaults to the semi-colon (";")
+     */
+    public void setDelimiter(String delimiter) {
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * @return The type of Jasypt Encryptor the candidate passwords are encrypted with
+     */
+    public Encryptor getEncryptor() {
+        return encryptor;
+    }
+
+    /**
+     * @param encryptor The type of Jasypt Encryptor the candidate passwords are encrypted with
+     */
+    public void setEncryptor(Encryptor encryptor) {
+        this.encryptor = encryptor;
+    }
+
+    /**
+     * @return The fraction, between 0 and 1, of authentications re-checked against the candidate.  Defaults to 0.01.
+     */
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @param sampleRate The fraction, between 0 and 1, of authentications re-checked against the candidate
+     */
+    public void setSampleRate(double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * @return The number of background threads doing the re-checks.  Defaults to 1.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @param threads The number of background threads doing the re-checks
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * @return The most re-checks that may wait for a thread before further samples are dropped.  Defaults to 100.
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * @param queueSize The most re-checks that may wait for a thread before further samples are dropped
+     */
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * @param metrics A metrics registry to record the outcome and cost of re-checks in
+     * @return A ShadowVerifier re-checking against this configuration's candidate peers and encryptor
+     */
+    public ShadowVerifier createShadowVerifier(MetricRegistry metrics) {
+        // the candidate's own password-matching statistics are kept apart from the current authenticator's
+        AllowedPeerAuthenticator candidate = new AllowedPeerAuthenticator(createPeerDAO(),
+                                                                          encryptor.getPasswordEncryptor(),
+                                                                          new MetricRegistry());
+        return new ShadowVerifier(candidate, this.sampleRate, this.threads, this.queueSize, metrics);
+    }
+
+    private PeerDAO createPeerDAO() {
+        if (this.credentialFile != null) {
+            InputStream candidatePeersResource = this.getClass().getClassLoader().getResourceAsStream(this.credentialFile);
+            return new FlatFilePeerDAO(candidatePeersResource);
+        }
+        else if (this.users != null && this.passwords != null && this.delimiter != null) {
+            return new StringPeerDAO(this.users, this.passwords, this.delimiter);
+        }
+        else {
+            throw new IllegalStateException("Illegal call to createShadowVerifier() when no valid configuration was set");
+        }
+    }
+}
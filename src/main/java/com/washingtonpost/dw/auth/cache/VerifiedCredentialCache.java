@@ -0,0 +1,276 @@
+package com.washingtonpost.dw.auth.cache;
+
+import com.google.common.base.Preconditions;
+import io.dropwizard.lifecycle.Managed;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Remembers which (username, password) pairs have already been verified against a peer's encrypted password, so that a
+ * restarted service doesn't have to run every caller's first request through the (deliberately slow) password digest at
+ * once.</p>
+ * <p>Passwords are never held in plaintext: each verified password is remembered as an HMAC keyed with a locally held key,
+ * next to a fingerprint of the encrypted password it was verified against.  An entry only counts while that fingerprint
+ * still matches one of the peer's current encrypted passwords, so changing a peer's password invalidates its entries.</p>
+ * <p>The cache is loaded from its snapshot file when it's created and, being {@link Managed}, written back to it (encrypted
+ * with a key derived from the same locally held key) when the Dropwizard application stops.  A missing, unreadable or
+ * undecryptable snapshot just means starting cold.</p>
+ */
+public class VerifiedCredentialCache implements Managed {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VerifiedCredentialCache.class);
+    private static final byte FORMAT_VERSION = 1;
+    private static final int KEY_LENGTH = 32;
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH_BITS = 128;
+    private static final String HMAC = "HmacSHA256";
+
+    private final Path snapshotFile;
+    private final SecretKeySpec credentialKey;
+    private final SecretKeySpec snapshotKey;
+    private final ThreadLocal<Mac> credentialMac;
+    private final ConcurrentMap<String, ConcurrentMap<String, String>> verified = new ConcurrentHashMap<>();
+
+    /**
+     * @param snapshotFile The file the cache is loaded from now and saved to on {@link #stop()}
+     * @param keyFile The file holding the locally held key.  If it doesn't exist, a new random key is generated and written
+     * to it, readable only by its owner where the file system supports that.
+     */
+    public VerifiedCredentialCache(Path snapshotFile, Path keyFile) {
+        Preconditions.checkNotNull(snapshotFile, "The snapshot file of a VerifiedCredentialCache must not be null");
+        Preconditions.checkNotNull(keyFile, "The key file of a VerifiedCredentialCache must not be null");
+        this.snapshotFile = snapshotFile;
+        byte[] masterKey = readOrCreateKey(keyFile);
+        this.credentialKey = new SecretKeySpec(hmac(new SecretKeySpec(masterKey, HMAC), "credential-hmac"), HMAC);
+        this.snapshotKey = new SecretKeySpec(hmac(new SecretKeySpec(masterKey, HMAC), "snapshot-encryption"), "AES");
+        this.credentialMac = ThreadLocal.withInitial(() -> newMac(this.credentialKey));
+        load();
+    }
+
+    /**
+     * @param username The name of a peer
+     * @param password The plaintext password the peer presented
+     * @param storedPasswords The peer's current encrypted passwords
+     * @return True if {@code password} was previously verified against one of {@code storedPasswords}
+     */
+    public boolean isVerified(String username, String password, List<String> storedPasswords) {
+        Map<String, String> entries = this.verified.get(username);
+        if (entries == null) {
+            return false;
+        }
+        String credential = credentialHmac(password);
+        String fingerprint = entries.get(credential);
+        if (fingerprint == null) {
+            return false;
+        }
+        if (storedPasswords.stream().map(VerifiedCredentialCache::fingerprint).anyMatch(fingerprint::equals)) {
+            return true;
+        }
+        // the password it was verified against is gone, so this entry can never match again
+        entries.remove(credential, fingerprint);
+        return false;
+    }
+
+    /**
+     * @param username The name of a peer
+     * @param password The plaintext password the peer presented
+     * @param storedPassword The encrypted password {@code password} was just verified against
+     */
+    public void recordVerified(String username, String password, String storedPassword) {
+        this.verified.computeIfAbsent(username, (name) -> new ConcurrentHashMap<>())
+                     .put(credentialHmac(password), fingerprint(storedPassword));
+    }
+
+    /**
+     * Drops every entry that isn't for one of {@code storedPasswordsByName}'s current encrypted passwords
+     * @param storedPasswordsByName The encrypted passwords of every current peer, by peer name
+     */
+    public void retainAll(Map<String, List<String>> storedPasswordsByName) {
+        this.verified.entrySet().removeIf((user) -> {
+            List<String> storedPasswords = storedPasswordsByName.get(user.getKey());
+            if (storedPasswords == null) {
+                return true;
+            }
+            Set<String> fingerprints = storedPasswords.stream()
+                    .map(VerifiedCredentialCache::fingerprint).collect(Collectors.toSet());
+            user.getValue().values().removeIf((fingerprint) -> !fingerprints.contains(fingerprint));
+            return user.getValue().isEmpty();
+        });
+    }
+
+    /**
+     * @param username The name of a peer whose entries should all be dropped
+     */
+    public void invalidate(String username) {
+        this.verified.remove(username);
+    }
+
+    /**
+     * @return The number of verified credentials currently remembered
+     */
+    public int size() {
+        return this.verified.values().stream().mapToInt(Map::size).sum();
+    }
+
+    @Override
+    public void start() {
+        // the snapshot is loaded on construction so that it's warm before the first request
+    }
+
+    @Override
+    public void stop() throws IOException, GeneralSecurityException {
+        save();
+    }
+
+    /**
+     * Writes the cache's current contents, encrypted, to its snapshot file
+     * @throws IOException If the snapshot can't be written
+     * @throws GeneralSecurityException If the snapshot can't be encrypted
+     */
+    public void save() throws IOException, GeneralSecurityException {
+        ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(plaintext)) {
+            Map<String, Map<String, String>> snapshot = new HashMap<>(this.verified);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, Map<String, String>> user : snapshot.entrySet()) {
+                Map<String, String> entries = new HashMap<>(user.getValue());
+                out.writeUTF(user.getKey());
+                out.writeInt(entries.size());
+                for (Map.Entry<String, String> entry : entries.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeUTF(entry.getValue());
+                }
+            }
+        }
+
+        byte[] iv = new byte[IV_LENGTH];
+        new SecureRandom().nextBytes(iv);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, this.snapshotKey, new GCMParameterSpec(TAG_LENGTH_BITS, iv));
+        cipher.updateAAD(new byte[] {FORMAT_VERSION});
+        byte[] ciphertext = cipher.doFinal(plaintext.toByteArray());
+
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        file.write(FORMAT_VERSION);
+        file.write(iv);
+        file.write(ciphertext);
+        Path tempFile = this.snapshotFile.resolveSibling(this.snapshotFile.getFileName() + ".tmp");
+        Files.write(tempFile, file.toByteArray());
+        Files.move(tempFile, this.snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        LOGGER.info("Saved {} verified credentials to {}", size(), this.snapshotFile);
+    }
+
+    private void load() {
+        if (!Files.exists(this.snapshotFile)) {
+            LOGGER.info("No verified credential snapshot at {}; starting cold", this.snapshotFile);
+            return;
+        }
+        try {
+            byte[] file = Files.readAllBytes(this.snapshotFile);
+            Preconditions.checkState(file.length > 1 + IV_LENGTH && file[0] == FORMAT_VERSION,
+                                     "Unrecognized snapshot format");
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, this.snapshotKey,
+                        new GCMParameterSpec(TAG_LENGTH_BITS, Arrays.copyOfRange(file, 1, 1 + IV_LENGTH)));
+            cipher.updateAAD(new byte[] {FORMAT_VERSION});
+            byte[] plaintext = cipher.doFinal(file, 1 + IV_LENGTH, file.length - 1 - IV_LENGTH);
+
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(plaintext))) {
+                int users = in.readInt();
+                for (int i = 0; i < users; i++) {
+                    ConcurrentMap<String, String> entries = this.verified.computeIfAbsent(in.readUTF(),
+                            (name) -> new ConcurrentHashMap<>());
+                    int count = in.readInt();
+                    for (int j = 0; j < count; j++) {
+                        entries.put(in.readUTF(), in.readUTF());
+                    }
+                }
+            }
+            LOGGER.info("Loaded {} verified credentials from {}", size(), this.snapshotFile);
+        }
+        catch (IOException | GeneralSecurityException | IllegalStateException e) {
+            this.verified.clear();
+            LOGGER.warn("Could not load the verified credential snapshot at {}; starting cold", this.snapshotFile, e);
+        }
+    }
+
+    private String credentialHmac(String password) {
+        return Base64.getEncoder().encodeToString(this.credentialMac.get().doFinal(
+                password.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String fingerprint(String storedPassword) {
+        try {
+            return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(
+                    storedPassword.getBytes(StandardCharsets.UTF_8)));
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static byte[] hmac(SecretKeySpec key, String label) {
+        return newMac(key).doFinal(label.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Mac newMac(SecretKeySpec key) {
+        try {
+            Mac mac = Mac.getInstance(HMAC);
+            mac.init(key);
+            return mac;
+        }
+        catch (GeneralSecurityException e) {
+            throw new IllegalStateException(HMAC + " is not available", e);
+        }
+    }
+
+    private static byte[] readOrCreateKey(Path keyFile) {
+        try {
+            if (!Files.exists(keyFile)) {
+                byte[] key = new byte[KEY_LENGTH];
+                new SecureRandom().nextBytes(key);
+                if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+                    Files.createFile(keyFile, PosixFilePermissions.asFileAttribute(
+                            PosixFilePermissions.fromString("rw-------")));
+                }
+                Files.write(keyFile, Base64.getEncoder().encode(key));
+                LOGGER.info("Generated a new verified credential cache key in {}", keyFile);
+                return key;
+            }
+            byte[] key = Base64.getDecoder().decode(new String(Files.readAllBytes(keyFile), StandardCharsets.US_ASCII).trim());
+            Preconditions.checkState(key.length == KEY_LENGTH, "The key in " + keyFile + " must be " + KEY_LENGTH + " bytes");
+            return key;
+        }
+        catch (IOException ioe) {
+            throw new RuntimeException("Could not read or create the verified credential cache key file " + keyFile, ioe);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.washingtonpost.dw.auth.capacity;
+
+import com.codahale.metrics.Metered;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Preconditions;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Estimates how many more authentications per second a node can sustain before password hashing becomes the bottleneck,
+ * from live metrics:</p>
+ * <ul>
+ *   <li>the rate and mean duration of password checks, which with the core count gives the node's hashing capacity and how
+ * much of it is in use</li>
+ *   <li>the rate and mean duration of shadow verification checks, whose hashing runs on the same cores</li>
+ *   <li>the rate of requests arriving at the authenticator, which against the rate of password checks gives how many checks
+ * an average request costs once the caches have done their work</li>
+ * </ul>
+ * <p>All rates are one-minute moving averages.</p>
+ */
+public class AuthCapacityEstimator {
+
+    private final Timer passwordChecks;
+    private final Timer shadowChecks;
+    private final Metered requests;
+    private final Metered authentications;
+    private final int cores;
+
+    /**
+     * @param passwordChecks Times every use of the password encryptor
+     * @param shadowChecks Times every shadow verification check, or null without shadow verification
+     * @param requests Counts every request arriving at the authenticator, in front of any cache (see
+     * {@link MeteredAuthenticator})
+     * @param authentications Counts every request reaching the peer authenticator, behind any cache
+     * @param cores The number of cores available for password hashing
+     */
+    public AuthCapacityEstimator(Timer passwordChecks, Timer shadowChecks, Metered requests, Metered authentications,
+                                 int cores) {
+        Preconditions.checkNotNull(passwordChecks, "The password checks timer must not be null");
+        Preconditions.checkNotNull(requests, "The requests meter must not be null");
+        Preconditions.checkNotNull(authentications, "The authentications meter must not be null");
+        Preconditions.checkArgument(cores > 0, "There must be at least one core");
+        this.passwordChecks = passwordChecks;
+        this.shadowChecks = shadowChecks;
+        this.requests = requests;
+        this.authentications = authentications;
+        this.cores = cores;
+    }
+
+    /**
+     * @return An estimate based on the metrics as they are now
+     */
+    public Estimate estimate() {
+        double requestRate = this.requests.getOneMinuteRate();
+        double authenticationRate = this.authentications.getOneMinuteRate();
+        double checkRate = this.passwordChecks.getOneMinuteRate();
+        double meanCheckMillis = meanMillis(this.passwordChecks);
+        double shadowMillisPerSecond = (this.shadowChecks == null)
+                ? 0
+                : this.shadowChecks.getOneMinuteRate() * meanMillis(this.shadowChecks);
+        double coreMillisPerSecond = this.cores * 1000.0;
+
+        double cacheHitRate = (requestRate > 0) ? clamp(1 - authenticationRate / requestRate) : 0;
+        if (meanCheckMillis <= 0) {
+            return new Estimate(this.cores, requestRate, cacheHitRate, checkRate, 0, shadowMillisPerSecond,
+                                Double.POSITIVE_INFINITY, shadowMillisPerSecond / coreMillisPerSecond, 0,
+                                Double.POSITIVE_INFINITY);
+        }
+        // whatever the shadow verifier hashes isn't available to the authenticator
+        double checkCapacity = Math.max(0, coreMillisPerSecond - shadowMillisPerSecond) / meanCheckMillis;
+        double utilization = (checkRate * meanCheckMillis + shadowMillisPerSecond) / coreMillisPerSecond;
+        // with no traffic to learn from yet, assume the worst: every request needs a password check
+        double checksPerRequest = (requestRate > 0 && checkRate > 0) ? checkRate / requestRate : 1;
+        double remainingRequests = Math.max(0, checkCapacity - checkRate) / checksPerRequest;
+        return new Estimate(this.cores, requestRate, cacheHitRate, checkRate, meanCheckMillis, shadowMillisPerSecond,
+                            checkCapacity, utilization, checksPerRequest, remainingRequests);
+    }
+
+    private static double meanMillis(Timer timer) {
+        return timer.getSnapshot().getMean() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static double clamp(double fraction) {
+        return Math.max(0, Math.min(1, fraction));
+    }
+
+    /**
+     * A point-in-time estimate of authentication capacity
+     */
+    public static class Estimate {
+        private final int cores;
+        private final double requestsPerSecond;
+        private final double cacheHitRate;
+        private final double passwordChecksPerSecond;
+        private final double meanPasswordCheckMillis;
+        private final double shadowHashingMillisPerSecond;
+        private final double passwordCheckCapacityPerSecond;
+        private final double hashingUtilization;
+        private final double passwordChecksPerRequest;
+        private final double remainingRequestsPerSecond;
+
+        Estimate(int cores, double requestsPerSecond, double cacheHitRate, double passwordChecksPerSecond,
+                 double meanPasswordCheckMillis, double shadowHashingMillisPerSecond, double passwordCheckCapacityPerSecond,
+                 double hashingUtilization, double passwordChecksPerRequest, double remainingRequestsPerSecond) {
+            this.cores = cores;
+            this.requestsPerSecond = requestsPerSecond;
+            this.cacheHitRate = cacheHitRate;
+            this.passwordChecksPerSecond = passwordChecksPerSecond;
+            this.meanPasswordCheckMillis = meanPasswordCheckMillis;
+            this.shadowHashingMillisPerSecond = shadowHashingMillisPerSecond;
+            this.passwordCheckCapacityPerSecond = passwordCheckCapacityPerSecond;
+            this.hashingUtilization = hashingUtilization;
+            this.passwordChecksPerRequest = passwordChecksPerRequest;
+            this.remainingRequestsPerSecond = remainingRequestsPerSecond;
+        }
+
+        /**
+         * @return False until at least one password check has been timed (e.g. always, with the NONE encryptor), in which
+         * case capacities are infinite
+         */
+        public boolean isMeasured() {
+            return this.meanPasswordCheckMillis > 0;
+        }
+
+        public int getCores() {
+            return this.cores;
+        }
+
+        public double getRequestsPerSecond() {
+            return this.requestsPerSecond;
+        }
+
+        /**
+         * @return The fraction of requests answered by a cache without reaching the peer authenticator
+         */
+        public double getCacheHitRate() {
+            return this.cacheHitRate;
+        }
+
+        public double getPasswordChecksPerSecond() {
+            return this.passwordChecksPerSecond;
+        }
+
+        public double getMeanPasswordCheckMillis() {
+            return this.meanPasswordCheckMillis;
+        }
+
+        /**
+         * @return How many milliseconds of every second the shadow verifier spends on its checks, across all cores
+         */
+        public double getShadowHashingMillisPerSecond() {
+            return this.shadowHashingMillisPerSecond;
+        }
+
+        /**
+         * @return How many password checks per second all the cores could do, besides the shadow verifier's
+         */
+        public double getPasswordCheckCapacityPerSecond() {
+            return this.passwordCheckCapacityPerSecond;
+        }
+
+        /**
+         * @return The fraction of the hashing capacity in use, by password checks and shadow verification together
+         */
+        public double getHashingUtilization() {
+            return this.hashingUtilization;
+        }
+
+        /**
+         * @return The average number of password checks a request costs, after caching
+         */
+        public double getPasswordChecksPerRequest() {
+            return this.passwordChecksPerRequest;
+        }
+
+        /**
+         * @return How many more requests per second could be authenticated before hashing capacity runs out
+         */
+        public double getRemainingRequestsPerSecond() {
+            return this.remainingRequestsPerSecond;
+        }
+
+        @Override
+        public String toString() {
+            if (!isMeasured()) {
+                return String.format("no password checks measured yet; %.1f requests/s on %d cores, shadow verification "
+                        + "%.0f%% utilized", this.requestsPerSecond, this.cores, this.hashingUtilization * 100);
+            }
+            return String.format("hashing %.0f%% utilized (%.1f of %.1f password checks/s at %.2fms, plus %.1fms/s of shadow "
+                    + "verification, on %d cores); %.1f requests/s at %.2f checks/request (cache hit rate %.0f%%); ~%.1f "
+                    + "more requests/s possible",
+                    this.hashingUtilization * 100, this.passwordChecksPerSecond, this.passwordCheckCapacityPerSecond,
+                    this.meanPasswordCheckMillis, this.shadowHashingMillisPerSecond, this.cores, this.requestsPerSecond,
+                    this.passwordChecksPerRequest, this.cacheHitRate * 100, this.remainingRequestsPerSecond);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.washingtonpost.dw.auth.capacity;
+
+import com.codahale.metrics.health.HealthCheck;
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>Health check that turns unhealthy once the share of the node's password hashing capacity in use passes a threshold, so
+ * that autoscaling and load balancers can react before authentication latency collapses.</p>
+ */
+public class AuthCapacityHealthCheck extends HealthCheck {
+
+    private final AuthCapacityEstimator estimator;
+    private final double utilizationThreshold;
+
+    /**
+     * @param estimator The source of capacity estimates
+     * @param utilizationThreshold The hashing utilization, between 0 and 1, above which the check is unhealthy
+     */
+    public AuthCapacityHealthCheck(AuthCapacityEstimator estimator, double utilizationThreshold) {
+        Preconditions.checkNotNull(estimator, "The estimator of an AuthCapacityHealthCheck must not be null");
+        Preconditions.checkArgument(utilizationThreshold > 0 && utilizationThreshold <= 1,
+                                    "The utilization threshold must be above 0 and at most 1");
+        this.estimator = estimator;
+        this.utilizationThreshold = utilizationThreshold;
+    }
+
+    @Override
+    protected Result check() {
+        AuthCapacityEstimator.Estimate estimate = this.estimator.estimate();
+        if (estimate.getHashingUtilization() > this.utilizationThreshold) {
+            return Result.unhealthy("Password hashing above %.0f%% threshold: %s", this.utilizationThreshold * 100, estimate);
+        }
+        return Result.healthy(estimate.toString());
+    }
+}
@@ -0,0 +1,44 @@
+package com.washingtonpost.dw.auth.capacity;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMultimap;
+import io.dropwizard.servlets.tasks.Task;
+import java.io.PrintWriter;
+
+/**
+ * <p>Admin task reporting the current authentication capacity estimate, one figure per line.  Run it with
+ * {@code POST /tasks/peer-authenticator-capacity} on the admin port.</p>
+ */
+public class AuthCapacityTask extends Task {
+
+    public static final String NAME = "peer-authenticator-capacity";
+    private final AuthCapacityEstimator estimator;
+
+    /**
+     * @param estimator The source of capacity estimates
+     */
+    public AuthCapacityTask(AuthCapacityEstimator estimator) {
+        super(NAME);
+        Preconditions.checkNotNull(estimator, "The estimator of an AuthCapacityTask must not be null");
+        this.estimator = estimator;
+    }
+
+    @Override
+    public void execute(ImmutableMultimap<String, String> parameters, PrintWriter output) {
+        AuthCapacityEstimator.Estimate estimate = this.estimator.estimate();
+        output.printf("cores: %d%n", estimate.getCores());
+        output.printf("requests/s: %.2f%n", estimate.getRequestsPerSecond());
+        output.printf("cache hit rate: %.3f%n", estimate.getCacheHitRate());
+        output.printf("shadow verification ms/s: %.2f%n", estimate.getShadowHashingMillisPerSecond());
+        output.printf("hashing utilization: %.3f%n", estimate.getHashingUtilization());
+        if (!estimate.isMeasured()) {
+            output.println("password checks: none measured yet");
+            return;
+        }
+        output.printf("password checks/s: %.2f%n", estimate.getPasswordChecksPerSecond());
+        output.printf("mean password check ms: %.3f%n", estimate.getMeanPasswordCheckMillis());
+        output.printf("password check capacity/s: %.2f%n", estimate.getPasswordCheckCapacityPerSecond());
+        output.printf("password checks/request: %.3f%n", estimate.getPasswordChecksPerRequest());
+        output.printf("remaining requests/s: %.2f%n", estimate.getRemainingRequestsPerSecond());
+    }
+}
@@ -0,0 +1,37 @@
+package com.washingtonpost.dw.auth.capacity;
+
+import com.codahale.metrics.Meter;
+import com.google.common.base.Preconditions;
+import com.washingtonpost.dw.auth.model.Peer;
+import io.dropwizard.auth.AuthenticationException;
+import io.dropwizard.auth.Authenticator;
+import io.dropwizard.auth.basic.BasicCredentials;
+import java.util.Optional;
+
+/**
+ * <p>Authenticator that counts every request reaching the authenticator it wraps, for the {@link AuthCapacityEstimator}'s
+ * request rate.  Wrapping the whole chain, caches included, means the estimate doesn't depend on how any cache names its own
+ * metrics.</p>
+ */
+public class MeteredAuthenticator implements Authenticator<BasicCredentials, Peer> {
+
+    private final Authenticator<BasicCredentials, Peer> authenticator;
+    private final Meter requests;
+
+    /**
+     * @param authenticator The authenticator whose requests are counted
+     * @param requests The meter to count them in
+     */
+    public MeteredAuthenticator(Authenticator<BasicCredentials, Peer> authenticator, Meter requests) {
+        Preconditions.checkNotNull(authenticator, "The authenticator of a MeteredAuthenticator must not be null");
+        Preconditions.checkNotNull(requests, "The requests meter of a MeteredAuthenticator must not be null");
+        this.authenticator = authenticator;
+        this.requests = requests;
+    }
+
+    @Override
+    public Optional<Peer> authenticate(BasicCredentials credentials) throws AuthenticationException {
+        this.requests.mark();
+        return this.authenticator.authenticate(credentials);
+    }
+}
@@ -0,0 +1,318 @@
+package com.washingtonpost.dw.auth.dao;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.washingtonpost.dw.auth.encryptor.JasyptEncryptor;
+import com.washingtonpost.dw.auth.model.Peer;
+import com.washingtonpost.dw.auth.model.PeerChange;
+import io.dropwizard.lifecycle.Managed;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>PeerDAO over an append-only change-log file, one change per line:</p>
+ * <pre>
+ * ADD alice ENC(newHash),ENC(oldHash) 100
+ * UPDATE alice ENC(newHash)
+ * REMOVE alice
+ * </pre>
+ * <p>ADD and UPDATE lines hold the peer's name, its passwords (in the same format as {@code FlatFilePeerDAO}, so they can't
+ * contain whitespace) and an optional quota of requests per second; blank lines and lines starting with "#" are ignored, and
+ * malformed lines are logged and skipped.</p>
+ * <p>{@code findAll()} replays the whole log.  Subscribers are then sent just the lines appended since, which the DAO polls
+ * for, so following the log costs O(changes) rather than O(all peers).  If the log is ever replaced, it is replayed in full
+ * and subscribers are sent the difference.  A replaced log is told apart from an appended one by its file key (where the
+ * file system has one), by being shorter than what was already read, or by the last bytes already read having changed,
+ * which also catches a new file that reuses the old one's inode.  While the log is missing or unreadable, the peers stay as they were and subscribers are sent nothing.</p>
+ */
+public class ChangeLogPeerDAO implements PeerDAO, Managed {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChangeLogPeerDAO.class);
+    private static final int CHECKPOINT_LENGTH = 1024;
+    private final Path changeLog;
+    private final long pollIntervalMillis;
+    private final List<Consumer<PeerChange>> listeners = new CopyOnWriteArrayList<>();
+    private Map<String, Peer> peers = new LinkedHashMap<>();
+    private long offset;
+    private Object fileKey;
+    private byte[] checkpoint = new byte[0];
+    private ScheduledExecutorService poller;
+
+    /**
+     * @param changeLog The change-log file
+     * @param pollIntervalMillis How often subscribers' changes are polled for
+     */
+    public ChangeLogPeerDAO(Path changeLog, long pollIntervalMillis) {
+        Preconditions.checkNotNull(changeLog, "The change log of a ChangeLogPeerDAO must not be null");
+        Preconditions.checkArgument(pollIntervalMillis > 0, "The poll interval must be positive");
+        this.changeLog = changeLog;
+        this.pollIntervalMillis = pollIntervalMillis;
+    }
+
+    /**
+     * @return All the allowed Peers, from a replay of the whole change log
+     */
+    @Override
+    public synchronized Set<Peer> findAll() {
+        replay();
+        return new LinkedHashSet<>(this.peers.values());
+    }
+
+    @Override
+    public synchronized boolean subscribe(Consumer<PeerChange> listener) {
+        this.listeners.add(listener);
+        if (this.poller == null) {
+            this.poller = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("peer-change-log-%d").setDaemon(true).build());
+            this.poller.scheduleWithFixedDelay(this::poll, this.pollIntervalMillis, this.pollIntervalMillis,
+                                               TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    @Override
+    public void start() {
+        // polling starts with the first subscription
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (this.poller != null) {
+            this.poller.shutdownNow();
+            this.poller = null;
+        }
+    }
+
+    /**
+     * Sends subscribers every change appended to the log since the last poll, or the difference a replaced log makes
+     */
+    synchronized void poll() {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(this.changeLog, BasicFileAttributes.class);
+            List<PeerChange> changes;
+            boolean replaced = (attributes.fileKey() != null && !attributes.fileKey().equals(this.fileKey))
+                    || attributes.size() < this.offset
+                    || !Arrays.equals(readCheckpoint(this.offset), this.checkpoint);
+            if (replaced) {
+                LOGGER.warn("Change log {} was replaced; replaying it in full", this.changeLog);
+                changes = replayDifference();
+            }
+            else {
+                changes = readAppendedChanges();
+            }
+            for (PeerChange change : changes) {
+                for (Consumer<PeerChange> listener : this.listeners) {
+                    listener.accept(change);
+                }
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            LOGGER.error("Could not apply changes from change log {}; keeping the peers as they were", this.changeLog, e);
+        }
+    }
+
+    /*
+    Replays the whole log and returns the changes that turn the peers we had into the peers the log now describes
+    */
+    private List<PeerChange> replayDifference() {
+        Map<String, Peer> before = this.peers;
+        replay();
+        List<PeerChange> changes = new ArrayList<>();
+        before.keySet().stream().filter((name) -> !this.peers.containsKey(name))
+              .forEach((name) -> changes.add(PeerChange.removed(name)));
+        this.peers.values().forEach((peer) -> {
+            if (!before.containsKey(peer.getName())) {
+                changes.add(PeerChange.added(peer));
+            }
+            else if (!Objects.equals(before.get(peer.getName()), peer)) {
+                changes.add(PeerChange.updated(peer));
+            }
+        });
+        return changes;
+    }
+
+    /*
+    Reads the whole log into new peers, which (with the offset and file key) only replace ours once the read has succeeded
+    */
+    private void replay() {
+        Map<String, Peer> replayed = new LinkedHashMap<>();
+        Read read = read(0);
+        read.changes.forEach((change) -> apply(replayed, change));
+        this.peers = replayed;
+        this.offset = read.offset;
+        this.fileKey = read.fileKey;
+        this.checkpoint = read.checkpoint;
+    }
+
+    /*
+    Applies the lines appended since {@code offset} to our peers, once they've all been read
+    */
+    private List<PeerChange> readAppendedChanges() {
+        Read read = read(this.offset);
+        List<PeerChange> changes = new ArrayList<>();
+        for (PeerChange change : read.changes) {
+            changes.add(apply(this.peers, change));
+        }
+        this.offset = read.offset;
+        this.checkpoint = read.checkpoint;
+        return changes;
+    }
+
+    /*
+    Applies {@code change} to {@code peers}, returning it with its type corrected if it didn't match those peers (e.g. an ADD
+    of a peer we already have is really an UPDATE)
+    */
+    private PeerChange apply(Map<String, Peer> peers, PeerChange change) {
+        switch (change.getType()) {
+            case REMOVE:
+                if (peers.remove(change.getName()) == null) {
+                    LOGGER.warn("Change log {} removes unknown peer {}", this.changeLog, change.getName());
+                }
+                return change;
+            default:
+                boolean known = peers.put(change.getName(), change.getPeer()) != null;
+                if (known != (change.getType() == PeerChange.Type.UPDATE)) {
+                    LOGGER.warn("Change log {} has {} for {} peer {}", this.changeLog, change.getType(),
+                                known ? "existing" : "unknown", change.getName());
+                }
+                return known ? PeerChange.updated(change.getPeer()) : PeerChange.added(change.getPeer());
+        }
+    }
+
+    /*
+    Reads the complete lines from {@code fromOffset} on, leaving any partially written last line for the next read.
+    Malformed lines are logged and skipped.  Changes nothing, so a failed read leaves us as we were.
+    */
+    private Read read(long fromOffset) {
+        List<PeerChange> changes = new ArrayList<>();
+        try {
+            // the key is read first: if the file is replaced while it's read, the next poll sees a new key and replays it
+            Object key = Files.readAttributes(this.changeLog, BasicFileAttributes.class).fileKey();
+            byte[] appended;
+            long newOffset = fromOffset;
+            byte[] checkpoint;
+            try (FileChannel channel = FileChannel.open(this.changeLog, StandardOpenOption.READ)) {
+                appended = readRange(channel, fromOffset, Math.max(fromOffset, channel.size()));
+                for (int i = appended.length - 1; i >= 0; i--) {
+                    if (appended[i] == '\n') {
+                        newOffset = fromOffset + i + 1;
+                        break;
+                    }
+                }
+                checkpoint = readCheckpoint(channel, newOffset);
+            }
+
+            int lineStart = 0;
+            for (int i = 0; fromOffset + i < newOffset; i++) {
+                if (appended[i] == '\n') {
+                    String line = new String(appended, lineStart, i - lineStart, StandardCharsets.UTF_8);
+                    try {
+                        PeerChange change = parse(line);
+                        if (change != null) {
+                            changes.add(change);
+                        }
+                    }
+                    catch (IllegalArgumentException | IllegalStateException e) {
+                        // skipped rather than retried, so that one bad line can't hold up every change after it
+                        LOGGER.error("Skipping malformed line in change log {}: {}", this.changeLog, line, e);
+                    }
+                    lineStart = i + 1;
+                }
+            }
+            return new Read(changes, newOffset, key, checkpoint);
+        }
+        catch (IOException ioe) {
+            LOGGER.error("Could not read change log {}", this.changeLog, ioe);
+            throw new RuntimeException("Could not read the peer change log " + this.changeLog, ioe);
+        }
+    }
+
+    /*
+    The checkpoint of the log as it is now, to compare with the one taken when it was last read
+    */
+    private byte[] readCheckpoint(long end) throws IOException {
+        try (FileChannel channel = FileChannel.open(this.changeLog, StandardOpenOption.READ)) {
+            return readCheckpoint(channel, end);
+        }
+    }
+
+    /*
+    The last bytes before {@code end}, which never change while the log is only appended to
+    */
+    private static byte[] readCheckpoint(FileChannel channel, long end) throws IOException {
+        return readRange(channel, Math.max(0, end - CHECKPOINT_LENGTH), end);
+    }
+
+    /*
+    Reads from {@code start} up to {@code end}, or up to the end of the file if that comes first
+    */
+    private static byte[] readRange(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        long position = start;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+        }
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private PeerChange parse(String line) {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+            return null;
+        }
+        String[] tokens = trimmed.split("\\s+");
+        PeerChange.Type type = PeerChange.Type.valueOf(tokens[0]);
+        Preconditions.checkState(tokens.length >= 2, "Change log line must name a peer: " + tokens[0]);
+        if (type == PeerChange.Type.REMOVE) {
+            return PeerChange.removed(tokens[1]);
+        }
+        Preconditions.checkState(tokens.length == 3 || tokens.length == 4,
+                                 "Change log line must give " + tokens[1] + "'s passwords and, optionally, quota");
+        Integer quota = (tokens.length == 4) ? Integer.valueOf(tokens[3]) : null;
+        Peer peer = new Peer(tokens[1], JasyptEncryptor.getEncryptedParts(tokens[2]), quota);
+        return (type == PeerChange.Type.ADD) ? PeerChange.added(peer) : PeerChange.updated(peer);
+    }
+
+    /*
+    The changes read from the log, the offset just past the last complete line read, and the key and checkpoint of the file
+    read
+    */
+    private static final class Read {
+        private final List<PeerChange> changes;
+        private final long offset;
+        private final Object fileKey;
+        private final byte[] checkpoint;
+
+        private Read(List<PeerChange> changes, long offset, Object fileKey, byte[] checkpoint) {
+            this.changes = changes;
+            this.offset = offset;
+            this.fileKey = fileKey;
+            this.checkpoint = checkpoint;
+        }
+    }
+}
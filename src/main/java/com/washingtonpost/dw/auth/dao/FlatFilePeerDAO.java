@@ -6,6 +6,9 @@ import com.washingtonpost.dw.auth.encryptor.JasyptEncryptor;
 import com.washingtonpost.dw.auth.model.Peer;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import org.slf4j.Logger;
@@ -22,42 +25,67 @@ public class FlatFilePeerDAO implements PeerDAO {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(FlatFilePeerDAO.class);
     private final Properties allowedPeers;
+    private final Properties quotas;
 
     /**
      * @param inputStream An inputs stream holding a bunch of "user=password" key/pairs in Java Properties format.  This
      * constructor will close the InputStream after reading Peers from the stream.
      */
     public FlatFilePeerDAO(InputStream inputStream) {
-        this.allowedPeers = new Properties();
-        try {
-            this.allowedPeers.load(inputStream);
-            inputStream.close();
-        }
-        catch (IOException ioe) {
-            LOGGER.error("Could not load allowed peers into a Properties object", ioe);
-            throw new RuntimeException("This application requires a classpath-accessible file configured under the "
-                    + "allowedPeers.credentialFile property to load the allowed requestors of this service.  No such file "
-                    + "could be loaded.", ioe);
-        }
+        this(inputStream, null);
+    }
+
+    /**
+     * @param inputStream An inputs stream holding a bunch of "user=password" key/pairs in Java Properties format.  This
+     * constructor will close the InputStream after reading Peers from the stream.
+     * @param quotaStream An input stream holding "user=requestsPerSecond" key/pairs in Java Properties format, or null if no
+     * peer has a quota of its own.  Kept apart from the peers so that any username stays a username.  This constructor will
+     * close the InputStream after reading the quotas from it.
+     */
+    public FlatFilePeerDAO(InputStream inputStream, InputStream quotaStream) {
+        this.allowedPeers = load(inputStream, "credentialFile");
+        this.quotas = (quotaStream == null) ? new Properties() : load(quotaStream, "quotaFile");
     }
 
     /**
      * @return A Collection of all the allowed Peers.  Note that while the source data may include encrypted passwords
      * wrapped in an "ENC(...)" string to indicate to humans that the password is encrypted, this implementation strips off
-     * that ENC(...) wrapper to enable a simplify password-comparison logic.
+     * that ENC(...) wrapper to enable a simplify password-comparison logic.  A peer with more than one valid password (e.g.
+     * during a credential rotation) is written as a comma-separated list like "alice=ENC(newHash),ENC(oldHash)".  A peer's
+     * quota of requests per second is read from an optional "alice=100" entry in the quota stream.
      */
     @Override
     public Set<Peer> findAll() {
+        Map<String, Integer> quotasByName = new HashMap<>();
+        quotas.stringPropertyNames().forEach((username) -> {
+            Preconditions.checkState(allowedPeers.containsKey(username), "Quota given for unknown peer " + username);
+            quotasByName.put(username, Integer.valueOf(quotas.getProperty(username).trim()));
+        });
+
         Set<Peer> peers = Sets.newLinkedHashSetWithExpectedSize(this.allowedPeers.size());
         allowedPeers.entrySet().stream().forEach((entrySet) -> {
             String username = (String)entrySet.getKey();
             Preconditions.checkState(nameIsUnique(peers, username), "Can't have 2 identical usernames");
 
-            String password = JasyptEncryptor.getEncryptedPart((String)entrySet.getValue());
+            List<String> passwords = JasyptEncryptor.getEncryptedParts((String)entrySet.getValue());
 
-            peers.add(new Peer(username, password));
+            peers.add(new Peer(username, passwords, quotasByName.get(username)));
         });
         return peers;
     }
 
+    private static Properties load(InputStream inputStream, String property) {
+        Properties properties = new Properties();
+        try {
+            properties.load(inputStream);
+            inputStream.close();
+        }
+        catch (IOException ioe) {
+            LOGGER.error("Could not load the allowedPeers.{} into a Properties object", property, ioe);
+            throw new RuntimeException("This application requires a classpath-accessible file configured under the "
+                    + "allowedPeers." + property + " property to load the allowed requestors of this service.  No such file "
+                    + "could be loaded.", ioe);
+        }
+        return properties;
+    }
 }
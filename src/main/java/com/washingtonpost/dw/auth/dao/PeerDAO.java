@@ -1,7 +1,9 @@
 package com.washingtonpost.dw.auth.dao;
 
 import com.washingtonpost.dw.auth.model.Peer;
+import com.washingtonpost.dw.auth.model.PeerChange;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * <p>
@@ -14,6 +16,17 @@ public interface PeerDAO {
      */
     Set<Peer> findAll();
 
+    /**
+     * <p>Optionally subscribes to incremental changes, so callers can follow a dynamic source of peers without re-reading all
+     * of them on every change.  Changes are relative to the peers last returned by {@code findAll()}, so call that first.</p>
+     * <p>The default implementation doesn't support subscriptions.</p>
+     * @param listener Called with each change, in order, possibly from another thread
+     * @return True if this PeerDAO supports subscriptions and {@code listener} was subscribed, false otherwise
+     */
+    default boolean subscribe(Consumer<PeerChange> listener) {
+        return false;
+    }
+
     /**
      *
      * @param peers A Set of Peers to check to see if there's already someone named {@code username} in it
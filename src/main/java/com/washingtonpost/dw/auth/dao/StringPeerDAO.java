@@ -4,6 +4,7 @@ import com.google.common.base.Preconditions;
 import com.washingtonpost.dw.auth.encryptor.JasyptEncryptor;
 import com.washingtonpost.dw.auth.model.Peer;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -24,7 +25,8 @@ public class StringPeerDAO implements PeerDAO {
      * @param users A string containing one or more usernames
      * @param passwords A string containing as many passwords as there are users.  Note that while the source data may include
      * encrypted passwords wrapped in an "ENC(...)" string to indicate to humans that the password is encrypted, this
-     * implementation strips off that ENC(...) wrapper to enable a simplify password-comparison logic.
+     * implementation strips off that ENC(...) wrapper to enable a simplify password-comparison logic.  A user with more than
+     * one valid password is given a comma-separated list of wrapped passwords, like "ENC(newHash),ENC(oldHash)".
      * @param delimiter The delimiter string for both {@code users} and {@code passwords}
      */
     public StringPeerDAO(String users, String passwords, String delimiter) {
@@ -42,9 +44,9 @@ public class StringPeerDAO implements PeerDAO {
             String username = userArray[i];
             Preconditions.checkState(nameIsUnique(peers, username), "Can't have 2 identical usernames");
 
-            String password = JasyptEncryptor.getEncryptedPart(passArray[i]);
+            List<String> userPasswords = JasyptEncryptor.getEncryptedParts(passArray[i]);
 
-            peers.add(new Peer(username, password));
+            peers.add(new Peer(username, userPasswords));
             //CHECKSTYLE_OFF: RegexpSinglelineJava
             System.out.println("Added peer " + username + " with password xxxx");
             //CHECKSTYLE_ON: RegexpSinglelineJava
@@ -1,6 +1,9 @@
 package com.washingtonpost.dw.auth.encryptor;
 
 import com.beust.jcommander.JCommander;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -11,6 +14,8 @@ import java.util.regex.Pattern;
 public final class JasyptEncryptor {
 
     public static final Pattern PATTERN = Pattern.compile("ENC\\((.+)\\)");
+    public static final Pattern LIST_PATTERN = Pattern.compile("\\s*ENC\\([^)]+\\)(\\s*,\\s*ENC\\([^)]+\\))+\\s*");
+    private static final Pattern LIST_ELEMENT_PATTERN = Pattern.compile("ENC\\(([^)]+)\\)");
 
     private JasyptEncryptor() {
     }
@@ -27,6 +32,24 @@ public final class JasyptEncryptor {
         return encString;
     }
 
+    /**
+     * @param encString Either a single (possibly "ENC(...)" wrapped) password, or a comma-separated list of "ENC(...)" wrapped
+     * passwords like "ENC(21u39fjvi0j0),ENC(9fj3kd0s1a)"
+     * @return The "encrypted parts" in the order they appear, e.g. ["21u39fjvi0j0", "9fj3kd0s1a"], or a single-element list
+     * holding {@code getEncryptedPart(encString)} if {@code encString} isn't a list of wrapped passwords
+     */
+    public static List<String> getEncryptedParts(String encString) {
+        if (!LIST_PATTERN.matcher(encString).matches()) {
+            return Collections.singletonList(getEncryptedPart(encString));
+        }
+        List<String> parts = new ArrayList<>();
+        Matcher matcher = LIST_ELEMENT_PATTERN.matcher(encString);
+        while (matcher.find()) {
+            parts.add(matcher.group(1));
+        }
+        return parts;
+    }
+
     /**
      * @param args Assumes a non-null "-type" param and "-password" param for use in creating an encryptor and then
      * encrypting the secret.
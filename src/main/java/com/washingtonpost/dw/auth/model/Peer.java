@@ -1,31 +1,60 @@
 package com.washingtonpost.dw.auth.model;
 
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import java.util.List;
 import java.util.Objects;
 import java.security.Principal;
 
 
 /**
  * <p>Models a remote caller of this service</p>
+ * <p>A Peer may carry more than one valid password so that a credential can be rotated without a flag-day change across
+ * all callers: the new password is added alongside the old one, callers migrate at their own pace, and the old password is
+ * removed once nobody authenticates with it any more.  The first password in the list is the "primary" password.</p>
+ * <p>A Peer may also carry its own quota of requests per second, overriding any configured default quota.</p>
  */
 public class Peer implements Principal {
     private final String username;
-    private final String password;
+    private final List<String> passwords;
+    private final Integer quota;
 
     public Peer(String username, String password) {
+        this(username, ImmutableList.of(password));
+    }
+
+    /**
+     * @param username The name of this peer
+     * @param passwords One or more valid (possibly encrypted) passwords for this peer, primary password first
+     */
+    public Peer(String username, List<String> passwords) {
+        this(username, passwords, null);
+    }
+
+    /**
+     * @param username The name of this peer
+     * @param passwords One or more valid (possibly encrypted) passwords for this peer, primary password first
+     * @param quota The number of requests per second this peer may make, or null to use the default quota
+     */
+    public Peer(String username, List<String> passwords, Integer quota) {
+        Preconditions.checkArgument(passwords != null && !passwords.isEmpty(), "A peer must have at least one password");
+        Preconditions.checkArgument(quota == null || quota > 0, "A peer's quota must be positive, not " + quota);
         this.username = username;
-        this.password = password;
+        this.passwords = ImmutableList.copyOf(passwords);
+        this.quota = quota;
     }
 
     @Override
     public String toString() {
-        return String.format("Peer{username=%s, password=%s}", this.username, this.password);
+        return String.format("Peer{username=%s, passwords=%s, quota=%s}", this.username, this.passwords, this.quota);
     }
 
     @Override
     public int hashCode() {
         int hash = 3;
         hash = 59 * hash + Objects.hashCode(this.username);
-        hash = 59 * hash + Objects.hashCode(this.password);
+        hash = 59 * hash + Objects.hashCode(this.passwords);
+        hash = 59 * hash + Objects.hashCode(this.quota);
         return hash;
     }
 
@@ -41,7 +70,10 @@ public class Peer implements Principal {
         if (!Objects.equals(this.username, other.username)) {
             return false;
         }
-        if (!Objects.equals(this.password, other.password)) {
+        if (!Objects.equals(this.passwords, other.passwords)) {
+            return false;
+        }
+        if (!Objects.equals(this.quota, other.quota)) {
             return false;
         }
         return true;
@@ -54,9 +86,23 @@ public class Peer implements Principal {
 
     /**
      * This is exposed to support a Jasypt-like check of plaintext-vs-encrypted password
-     * @return the password of this peer
+     * @return the primary password of this peer
      */
     public String getPassword() {
-        return this.password;
+        return this.passwords.get(0);
+    }
+
+    /**
+     * @return All the valid passwords of this peer, primary password first
+     */
+    public List<String> getPasswords() {
+        return this.passwords;
+    }
+
+    /**
+     * @return The number of requests per second this peer may make, or null if the default quota applies
+     */
+    public Integer getQuota() {
+        return this.quota;
     }
 }
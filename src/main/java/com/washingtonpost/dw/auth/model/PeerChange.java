@@ -0,0 +1,97 @@
+package com.washingtonpost.dw.auth.model;
+
+import com.google.common.base.Preconditions;
+import java.util.Objects;
+
+
+/**
+ * <p>Models one incremental change to the set of allowed Peers: a peer was added, updated or removed</p>
+ */
+public class PeerChange {
+
+    /**
+     * The kinds of change a PeerDAO can report
+     */
+    public enum Type {
+        ADD,
+        UPDATE,
+        REMOVE
+    }
+
+    private final Type type;
+    private final String name;
+    private final Peer peer;
+
+    private PeerChange(Type type, String name, Peer peer) {
+        this.type = type;
+        this.name = name;
+        this.peer = peer;
+    }
+
+    /**
+     * @param peer A newly allowed peer
+     * @return An ADD change
+     */
+    public static PeerChange added(Peer peer) {
+        Preconditions.checkNotNull(peer, "An added peer must not be null");
+        return new PeerChange(Type.ADD, peer.getName(), peer);
+    }
+
+    /**
+     * @param peer The new state of an already allowed peer
+     * @return An UPDATE change
+     */
+    public static PeerChange updated(Peer peer) {
+        Preconditions.checkNotNull(peer, "An updated peer must not be null");
+        return new PeerChange(Type.UPDATE, peer.getName(), peer);
+    }
+
+    /**
+     * @param name The name of a peer that is no longer allowed
+     * @return A REMOVE change
+     */
+    public static PeerChange removed(String name) {
+        Preconditions.checkNotNull(name, "The name of a removed peer must not be null");
+        return new PeerChange(Type.REMOVE, name, null);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PeerChange{type=%s, name=%s}", this.type, this.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.type, this.name, this.peer);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final PeerChange other = (PeerChange) obj;
+        return this.type == other.type && Objects.equals(this.name, other.name) && Objects.equals(this.peer, other.peer);
+    }
+
+    public Type getType() {
+        return this.type;
+    }
+
+    /**
+     * @return The name of the changed peer
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return The new state of the peer for ADD and UPDATE changes, or null for REMOVE changes
+     */
+    public Peer getPeer() {
+        return this.peer;
+    }
+}
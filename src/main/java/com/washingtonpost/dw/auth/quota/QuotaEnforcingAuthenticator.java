@@ -0,0 +1,82 @@
+package com.washingtonpost.dw.auth.quota;
+
+import com.google.common.base.Preconditions;
+import com.washingtonpost.dw.auth.model.Peer;
+import io.dropwizard.auth.AuthenticationException;
+import io.dropwizard.auth.Authenticator;
+import io.dropwizard.auth.basic.BasicCredentials;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Authenticator decorator that limits how many requests per second each authenticated peer may make.</p>
+ * <p>A peer's quota is its own {@link Peer#getQuota()} if it has one, or otherwise the default quota given to this
+ * authenticator; a peer with neither is unlimited.  Each limited peer gets a {@link TokenBucket}, and a request that finds its
+ * peer's bucket empty is rejected with a "429 Too Many Requests" response carrying a Retry-After header.</p>
+ * <p>Because it sits in front of any CachingAuthenticator, quotas are enforced on every request, not just on cache misses.</p>
+ */
+public class QuotaEnforcingAuthenticator implements Authenticator<BasicCredentials, Peer> {
+
+    public static final int TOO_MANY_REQUESTS = 429;
+    private static final Logger LOGGER = LoggerFactory.getLogger(QuotaEnforcingAuthenticator.class);
+
+    private final Authenticator<BasicCredentials, Peer> authenticator;
+    private final Integer defaultQuota;
+    private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * @param authenticator The authenticator whose successfully authenticated peers are subject to quotas
+     * @param defaultQuota The (positive) requests per second allowed to peers without a quota of their own, or null for no
+     * limit
+     */
+    public QuotaEnforcingAuthenticator(Authenticator<BasicCredentials, Peer> authenticator, Integer defaultQuota) {
+        Preconditions.checkNotNull(authenticator, "The authenticator of a QuotaEnforcingAuthenticator must not be null");
+        Preconditions.checkArgument(defaultQuota == null || defaultQuota > 0,
+                                    "The default quota must be positive (or null for no limit), not " + defaultQuota);
+        this.authenticator = authenticator;
+        this.defaultQuota = defaultQuota;
+    }
+
+    @Override
+    public Optional<Peer> authenticate(BasicCredentials credentials) throws AuthenticationException {
+        Optional<Peer> peer = this.authenticator.authenticate(credentials);
+        if (peer.isPresent()) {
+            enforceQuota(peer.get());
+        }
+        return peer;
+    }
+
+    /**
+     * @param peerName The name of a peer whose bucket should be dropped, e.g. because its quota changed
+     */
+    public void invalidate(String peerName) {
+        this.buckets.remove(peerName);
+    }
+
+    private void enforceQuota(Peer peer) {
+        Integer quota = (peer.getQuota() != null) ? peer.getQuota() : this.defaultQuota;
+        if (quota == null) {
+            return;
+        }
+        TokenBucket bucket = this.buckets.get(peer.getName());
+        if (bucket == null || bucket.getPermitsPerSecond() != quota) {
+            bucket = this.buckets.compute(peer.getName(), (name, existing) ->
+                    (existing != null && existing.getPermitsPerSecond() == quota) ? existing : new TokenBucket(quota));
+        }
+        long waitNanos = bucket.tryAcquire();
+        if (waitNanos > 0) {
+            long retryAfterSeconds = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+            LOGGER.debug("{} is over its quota of {} requests per second", peer.getName(), quota);
+            throw new WebApplicationException(Response.status(TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds)
+                    .build());
+        }
+    }
+}
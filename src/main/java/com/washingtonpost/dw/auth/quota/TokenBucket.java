@@ -0,0 +1,61 @@
+package com.washingtonpost.dw.auth.quota;
+
+import com.google.common.base.Preconditions;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>A lock-free token bucket that refills at {@code permitsPerSecond} and holds at most one second's worth of permits.</p>
+ * <p>Rather than counting tokens, the bucket keeps the single time at which it will next be completely full (the "generic
+ * cell rate algorithm" formulation of a token bucket), so taking a permit is one read and one compare-and-set of an
+ * {@code AtomicLong}, and an idle bucket costs nothing to keep up to date.</p>
+ */
+public class TokenBucket {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final int permitsPerSecond;
+    private final long nanosPerPermit;
+    private final long capacityNanos;
+    private final AtomicLong fullAt;
+
+    /**
+     * @param permitsPerSecond The sustained number of permits per second, which is also the bucket's burst capacity
+     */
+    public TokenBucket(int permitsPerSecond) {
+        Preconditions.checkArgument(permitsPerSecond > 0, "A token bucket needs a positive rate, not " + permitsPerSecond);
+        this.permitsPerSecond = permitsPerSecond;
+        this.nanosPerPermit = NANOS_PER_SECOND / permitsPerSecond;
+        this.capacityNanos = this.nanosPerPermit * permitsPerSecond;
+        this.fullAt = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * @return The sustained number of permits per second of this bucket
+     */
+    public int getPermitsPerSecond() {
+        return this.permitsPerSecond;
+    }
+
+    /**
+     * @return Zero if a permit was taken, otherwise the number of nanoseconds until one will be available
+     */
+    public long tryAcquire() {
+        return tryAcquire(System.nanoTime());
+    }
+
+    long tryAcquire(long now) {
+        while (true) {
+            long current = this.fullAt.get();
+            // a bucket that filled up in the past is simply full now
+            long next = Math.max(current, now) + this.nanosPerPermit;
+            long overdraft = next - now - this.capacityNanos;
+            if (overdraft > 0) {
+                return overdraft;
+            }
+            if (this.fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.washingtonpost.dw.auth.realm;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.washingtonpost.dw.auth.model.Peer;
+import io.dropwizard.auth.AuthenticationException;
+import io.dropwizard.auth.Authenticator;
+import io.dropwizard.auth.basic.BasicCredentials;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Authenticator that restricts a shared authenticator to a subset of its peers.</p>
+ * <p>Every realm of a service wraps the same underlying authenticator, so all realms share one peer index, one cache and one
+ * password encryptor.  Requests from peers outside the realm are rejected by name before reaching the shared authenticator,
+ * so they cost neither a password check nor a cache entry.</p>
+ */
+public class RealmAuthenticator implements Authenticator<BasicCredentials, Peer> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RealmAuthenticator.class);
+    private final Authenticator<BasicCredentials, Peer> authenticator;
+    private final Set<String> peerNames;
+
+    /**
+     * @param authenticator The shared authenticator
+     * @param peerNames The names of the peers allowed into this realm
+     */
+    public RealmAuthenticator(Authenticator<BasicCredentials, Peer> authenticator, Collection<String> peerNames) {
+        Preconditions.checkNotNull(authenticator, "The authenticator of a RealmAuthenticator must not be null");
+        Preconditions.checkNotNull(peerNames, "The peer names of a RealmAuthenticator must not be null");
+        this.authenticator = authenticator;
+        this.peerNames = ImmutableSet.copyOf(peerNames);
+    }
+
+    @Override
+    public Optional<Peer> authenticate(BasicCredentials credentials) throws AuthenticationException {
+        if (!this.peerNames.contains(credentials.getUsername())) {
+            LOGGER.debug("{} is not allowed into this realm", credentials.getUsername());
+            return Optional.empty();
+        }
+        return this.authenticator.authenticate(credentials);
+    }
+}
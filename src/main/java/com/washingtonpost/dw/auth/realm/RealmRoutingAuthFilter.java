@@ -0,0 +1,87 @@
+package com.washingtonpost.dw.auth.realm;
+
+import com.google.common.base.Preconditions;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.core.PathSegment;
+
+/**
+ * <p>Request filter that hands each request to the auth filter of the realm bound to the longest matching resource path
+ * prefix, or to a default auth filter if no prefix matches.</p>
+ * <p>Prefixes match whole path segments, so "/admin" matches "/admin" and "/admin/users" but not "/administrators".  Matrix
+ * parameters are ignored, as they are when Jersey matches resources, so "/admin;x=1/users" is in the "/admin" realm too.</p>
+ */
+@Priority(Priorities.AUTHENTICATION)
+public class RealmRoutingAuthFilter implements ContainerRequestFilter {
+
+    private final Map<String, ContainerRequestFilter> filtersByPrefix = new LinkedHashMap<>();
+    private final ContainerRequestFilter defaultFilter;
+
+    /**
+     * @param defaultFilter The auth filter for requests that match none of the realms' path prefixes
+     */
+    public RealmRoutingAuthFilter(ContainerRequestFilter defaultFilter) {
+        Preconditions.checkNotNull(defaultFilter, "The default filter of a RealmRoutingAuthFilter must not be null");
+        this.defaultFilter = defaultFilter;
+    }
+
+    /**
+     * @param pathPrefix A resource path prefix, like "/admin"
+     * @param filter The auth filter of the realm bound to {@code pathPrefix}
+     * @return this
+     */
+    public RealmRoutingAuthFilter addRealm(String pathPrefix, ContainerRequestFilter filter) {
+        Preconditions.checkNotNull(pathPrefix, "A realm's path prefix must not be null");
+        Preconditions.checkNotNull(filter, "A realm's filter must not be null");
+        String normalized = normalize(pathPrefix);
+        Preconditions.checkState(!this.filtersByPrefix.containsKey(normalized), "Can't have 2 realms for path " + pathPrefix);
+        this.filtersByPrefix.put(normalized, filter);
+        return this;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+        filterFor(matchedPath(requestContext.getUriInfo().getPathSegments())).filter(requestContext);
+    }
+
+    /*
+    UriInfo.getPath() keeps matrix parameters ("admin;x=1/users") but Jersey ignores them when matching resources, so route on
+    the path Jersey matches: the (decoded) segments without their matrix parameters
+    */
+    static String matchedPath(List<PathSegment> segments) {
+        return segments.stream().map(PathSegment::getPath).collect(Collectors.joining("/"));
+    }
+
+    ContainerRequestFilter filterFor(String path) {
+        String normalized = normalize(path);
+        String bestPrefix = null;
+        for (String prefix : this.filtersByPrefix.keySet()) {
+            boolean matches = normalized.equals(prefix) || prefix.isEmpty() || normalized.startsWith(prefix + "/");
+            if (matches && (bestPrefix == null || prefix.length() > bestPrefix.length())) {
+                bestPrefix = prefix;
+            }
+        }
+        return (bestPrefix == null) ? this.defaultFilter : this.filtersByPrefix.get(bestPrefix);
+    }
+
+    /*
+    Paths are relative to the application's base URI, so compare them without leading or trailing slashes
+    */
+    private static String normalize(String path) {
+        String normalized = path;
+        while (normalized.startsWith("/")) {
+            normalized = normalized.substring(1);
+        }
+        while (normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized;
+    }
+}
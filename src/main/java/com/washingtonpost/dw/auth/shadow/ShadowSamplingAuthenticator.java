@@ -0,0 +1,38 @@
+package com.washingtonpost.dw.auth.shadow;
+
+import com.google.common.base.Preconditions;
+import com.washingtonpost.dw.auth.model.Peer;
+import io.dropwizard.auth.AuthenticationException;
+import io.dropwizard.auth.Authenticator;
+import io.dropwizard.auth.basic.BasicCredentials;
+import java.util.Optional;
+
+/**
+ * <p>Authenticator that hands the outcome of every authentication by the authenticator it wraps to a {@link ShadowVerifier}
+ * to be sampled.</p>
+ * <p>It belongs in front of any CachingAuthenticator: behind one, only cache misses would be sampled, and peers whose
+ * credentials stay cached would hardly ever be re-checked.</p>
+ */
+public class ShadowSamplingAuthenticator implements Authenticator<BasicCredentials, Peer> {
+
+    private final Authenticator<BasicCredentials, Peer> authenticator;
+    private final ShadowVerifier shadowVerifier;
+
+    /**
+     * @param authenticator The current authenticator
+     * @param shadowVerifier The verifier sampling its outcomes
+     */
+    public ShadowSamplingAuthenticator(Authenticator<BasicCredentials, Peer> authenticator, ShadowVerifier shadowVerifier) {
+        Preconditions.checkNotNull(authenticator, "The authenticator of a ShadowSamplingAuthenticator must not be null");
+        Preconditions.checkNotNull(shadowVerifier, "The verifier of a ShadowSamplingAuthenticator must not be null");
+        this.authenticator = authenticator;
+        this.shadowVerifier = shadowVerifier;
+    }
+
+    @Override
+    public Optional<Peer> authenticate(BasicCredentials credentials) throws AuthenticationException {
+        Optional<Peer> peer = this.authenticator.authenticate(credentials);
+        this.shadowVerifier.sample(credentials, peer.isPresent());
+        return peer;
+    }
+}
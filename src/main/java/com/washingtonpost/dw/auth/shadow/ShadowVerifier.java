@@ -0,0 +1,123 @@
+package com.washingtonpost.dw.auth.shadow;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.washingtonpost.dw.auth.model.Peer;
+import io.dropwizard.auth.Authenticator;
+import io.dropwizard.auth.basic.BasicCredentials;
+import io.dropwizard.lifecycle.Managed;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Re-checks a sampled fraction of authentications against a candidate authenticator, typically one built from a new
+ * credential source and/or password encryptor, so a migration can be measured against live traffic before it's made.</p>
+ * <p>Checks run on a bounded background executor: when its queue is full, samples are dropped (and counted) rather than
+ * making the request wait.  Agreement with the current authenticator, the candidate accepting what the current one rejected
+ * ({@code candidate-false-accepts}, a security regression) and the candidate rejecting what the current one accepted
+ * ({@code candidate-false-rejects}, an outage), the cost of each check, dropped samples and errors are all recorded as
+ * metrics under this class's name.  Use a {@link ShadowSamplingAuthenticator} to sample every authentication.</p>
+ */
+public class ShadowVerifier implements Managed {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShadowVerifier.class);
+    private final Authenticator<BasicCredentials, Peer> candidate;
+    private final double sampleRate;
+    private final ThreadPoolExecutor executor;
+    private final Meter agreements;
+    private final Meter falseAccepts;
+    private final Meter falseRejects;
+    private final Meter dropped;
+    private final Meter errors;
+    private final Timer checks;
+
+    /**
+     * @param candidate The authenticator to compare the current one against
+     * @param sampleRate The fraction, between 0 and 1, of authentications to re-check
+     * @param threads The number of background threads doing the re-checks
+     * @param queueSize The most re-checks that may be waiting for a thread; any more are dropped
+     * @param metrics A metrics registry to record the outcome and cost of re-checks in
+     */
+    public ShadowVerifier(Authenticator<BasicCredentials, Peer> candidate, double sampleRate, int threads, int queueSize,
+                          MetricRegistry metrics) {
+        Preconditions.checkNotNull(candidate, "The candidate authenticator of a ShadowVerifier must not be null");
+        Preconditions.checkArgument(sampleRate >= 0 && sampleRate <= 1, "The sample rate must be between 0 and 1");
+        Preconditions.checkArgument(threads > 0, "A ShadowVerifier needs at least one thread");
+        Preconditions.checkArgument(queueSize > 0, "A ShadowVerifier needs a positive queue size");
+        this.candidate = candidate;
+        this.sampleRate = sampleRate;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                new ThreadFactoryBuilder().setNameFormat("peer-shadow-verifier-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.agreements = metrics.meter(MetricRegistry.name(ShadowVerifier.class, "agreements"));
+        this.falseAccepts = metrics.meter(MetricRegistry.name(ShadowVerifier.class, "candidate-false-accepts"));
+        this.falseRejects = metrics.meter(MetricRegistry.name(ShadowVerifier.class, "candidate-false-rejects"));
+        this.dropped = metrics.meter(MetricRegistry.name(ShadowVerifier.class, "dropped"));
+        this.errors = metrics.meter(MetricRegistry.name(ShadowVerifier.class, "errors"));
+        this.checks = metrics.timer(MetricRegistry.name(ShadowVerifier.class, "checks"));
+    }
+
+    /**
+     * @return The timer timing every re-check against the candidate authenticator
+     */
+    public Timer getChecks() {
+        return this.checks;
+    }
+
+    /**
+     * Samples {@code credentials} for a background re-check; returns immediately either way
+     * @param credentials The credentials just authenticated by the current authenticator
+     * @param authenticated Whether the current authenticator accepted them
+     */
+    public void sample(BasicCredentials credentials, boolean authenticated) {
+        if (this.sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= this.sampleRate) {
+            return;
+        }
+        try {
+            this.executor.execute(() -> verify(credentials, authenticated));
+        }
+        catch (RejectedExecutionException e) {
+            this.dropped.mark();
+        }
+    }
+
+    private void verify(BasicCredentials credentials, boolean authenticated) {
+        try (Timer.Context context = this.checks.time()) {
+            boolean candidateAuthenticated = this.candidate.authenticate(credentials).isPresent();
+            if (candidateAuthenticated == authenticated) {
+                this.agreements.mark();
+            }
+            else if (candidateAuthenticated) {
+                this.falseAccepts.mark();
+                LOGGER.warn("Candidate authenticator accepted {}, who is currently rejected", credentials.getUsername());
+            }
+            else {
+                this.falseRejects.mark();
+                LOGGER.debug("Candidate authenticator rejected {}, who is currently accepted", credentials.getUsername());
+            }
+        }
+        catch (Exception e) {
+            this.errors.mark();
+            LOGGER.warn("Candidate authenticator failed for {}", credentials.getUsername(), e);
+        }
+    }
+
+    @Override
+    public void start() {
+        // the executor's threads start on demand
+    }
+
+    @Override
+    public void stop() {
+        this.executor.shutdownNow();
+    }
+}
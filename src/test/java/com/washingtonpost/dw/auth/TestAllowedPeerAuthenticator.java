@@ -1,24 +1,37 @@
 package com.washingtonpost.dw.auth;
 
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.washingtonpost.dw.auth.cache.VerifiedCredentialCache;
 import com.washingtonpost.dw.auth.dao.PeerDAO;
 import com.washingtonpost.dw.auth.model.Peer;
+import com.washingtonpost.dw.auth.model.PeerChange;
 import io.dropwizard.auth.AuthenticationException;
 import io.dropwizard.auth.basic.BasicCredentials;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import static org.easymock.EasyMock.*;
+import org.jasypt.util.password.BasicPasswordEncryptor;
+import org.jasypt.util.password.PasswordEncryptor;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 /**
  * <p>Tests the authenticator lets Peers in (or keeps 'em out) as appropriate</p>
  */
 public class TestAllowedPeerAuthenticator {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     private final Set<Peer> allPeers = ImmutableSet.of(new Peer("foo", "secret1"), new Peer("bar", "secret2"));
     private PeerDAO peerDAO;
     private AllowedPeerAuthenticator authenticator;
@@ -44,4 +57,68 @@ public class TestAllowedPeerAuthenticator {
         Optional<Peer> peer = authenticator.authenticate(new BasicCredentials("foo", "secret2"));
         assertFalse(peer.isPresent());
     }
+
+    @Test
+    public void testPeerWithMultiplePasswordsIsAllowedWithEither() throws AuthenticationException {
+        PeerDAO rotatingDAO = createNiceMock(PeerDAO.class);
+        expect(rotatingDAO.findAll()).andReturn(ImmutableSet.of(new Peer("foo", ImmutableList.of("new", "old")))).anyTimes();
+        replay(rotatingDAO);
+
+        AllowedPeerAuthenticator rotatingAuthenticator = new AllowedPeerAuthenticator(rotatingDAO, null);
+        assertTrue(rotatingAuthenticator.authenticate(new BasicCredentials("foo", "new")).isPresent());
+        assertTrue(rotatingAuthenticator.authenticate(new BasicCredentials("foo", "old")).isPresent());
+        assertFalse(rotatingAuthenticator.authenticate(new BasicCredentials("foo", "neither")).isPresent());
+    }
+
+    @Test
+    public void testMostRecentlyMatchedPasswordIsTriedFirst() throws AuthenticationException {
+        PeerDAO rotatingDAO = createNiceMock(PeerDAO.class);
+        expect(rotatingDAO.findAll()).andReturn(ImmutableSet.of(new Peer("foo", ImmutableList.of("new", "old")))).anyTimes();
+        replay(rotatingDAO);
+
+        MetricRegistry metrics = new MetricRegistry();
+        AllowedPeerAuthenticator rotatingAuthenticator = new AllowedPeerAuthenticator(rotatingDAO, null, metrics);
+        String candidatesName = MetricRegistry.name(AllowedPeerAuthenticator.class, "candidates-per-match");
+        String secondaryName = MetricRegistry.name(AllowedPeerAuthenticator.class, "secondary-password-matches");
+
+        // the first "old" match has to look at the primary password first; later ones go straight to "old"
+        rotatingAuthenticator.authenticate(new BasicCredentials("foo", "old"));
+        assertEquals(2, metrics.histogram(candidatesName).getSnapshot().getMax());
+        rotatingAuthenticator.authenticate(new BasicCredentials("foo", "old"));
+        rotatingAuthenticator.authenticate(new BasicCredentials("foo", "old"));
+        assertEquals(1, metrics.histogram(candidatesName).getSnapshot().getMin());
+        assertEquals(3, metrics.meter(secondaryName).getCount());
+    }
+
+    @Test
+    public void testPeerChangesAreAppliedInPlace() throws AuthenticationException {
+        List<PeerChange> seen = new ArrayList<>();
+        authenticator.addPeerChangeListener(seen::add);
+
+        authenticator.applyPeerChange(PeerChange.added(new Peer("baz", "secret3")));
+        authenticator.applyPeerChange(PeerChange.updated(new Peer("foo", "rotated")));
+        authenticator.applyPeerChange(PeerChange.removed("bar"));
+
+        assertTrue(authenticator.authenticate(new BasicCredentials("baz", "secret3")).isPresent());
+        assertTrue(authenticator.authenticate(new BasicCredentials("foo", "rotated")).isPresent());
+        assertFalse(authenticator.authenticate(new BasicCredentials("foo", "secret1")).isPresent());
+        assertFalse(authenticator.authenticate(new BasicCredentials("bar", "secret2")).isPresent());
+        assertEquals(3, seen.size());
+    }
+
+    @Test
+    public void testVerifiedCredentialCacheSkipsTheEncryptor() throws Exception {
+        PasswordEncryptor passwordEncryptor = new BasicPasswordEncryptor();
+        PeerDAO encryptedDAO = () -> ImmutableSet.of(new Peer("foo", passwordEncryptor.encryptPassword("secret1")));
+        VerifiedCredentialCache cache = new VerifiedCredentialCache(folder.getRoot().toPath().resolve("warm.snapshot"),
+                                                                    folder.getRoot().toPath().resolve("warm.key"));
+        MetricRegistry metrics = new MetricRegistry();
+        AllowedPeerAuthenticator warm = new AllowedPeerAuthenticator(encryptedDAO, passwordEncryptor, metrics, cache);
+
+        assertTrue(warm.authenticate(new BasicCredentials("foo", "secret1")).isPresent());
+        assertTrue(warm.authenticate(new BasicCredentials("foo", "secret1")).isPresent());
+        assertFalse(warm.authenticate(new BasicCredentials("foo", "wrong password")).isPresent());
+        assertEquals(1, metrics.meter(MetricRegistry.name(AllowedPeerAuthenticator.class, "warm-cache-hits")).getCount());
+        assertEquals(2, metrics.timer(MetricRegistry.name(AllowedPeerAuthenticator.class, "password-checks")).getCount());
+    }
 }
@@ -0,0 +1,244 @@
+package com.washingtonpost.dw.auth;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.CacheBuilderSpec;
+import com.google.common.collect.ImmutableList;
+import com.washingtonpost.dw.auth.AllowedPeerConfiguration.Encryptor;
+import com.washingtonpost.dw.auth.dao.PeerDAO;
+import com.washingtonpost.dw.auth.model.Peer;
+import com.washingtonpost.dw.auth.model.PeerChange;
+import io.dropwizard.auth.Authenticator;
+import io.dropwizard.auth.CachingAuthenticator;
+import io.dropwizard.auth.basic.BasicCredentials;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import org.jasypt.util.password.PasswordEncryptor;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Stress tests the authenticator from many threads at once, across every encryptor mode, with and without the
+ * CachingAuthenticator in front of it, and while peer changes are applied to a live authenticator.  Every authentication is
+ * checked against its expected outcome, so any false accept, false reject or exception fails the test.</p>
+ * <p>The suite is slow, so it only runs with the {@code peerAuthenticator.stress} system property set, e.g. with
+ * {@code mvn test -Pstress-tests}.</p>
+ * <p>Each scenario is run with 1, 2, 4, ... up to {@code availableProcessors()} threads, but at least up to
+ * {@code peerAuthenticator.stress.minThreads} (4) so that even a single-core host runs workers concurrently, and the
+ * throughput of each run is logged; a throughput curve that stays flat as threads are added points at a contention point.  Each run lasts at least
+ * {@code peerAuthenticator.stress.millis} milliseconds and at least {@code peerAuthenticator.stress.minOperations}
+ * authentications, so that slow encryptors like STRONG are exercised as hard as fast ones, but never more than
+ * {@code peerAuthenticator.stress.maxMillis} milliseconds.</p>
+ */
+public class TestAllowedPeerAuthenticatorConcurrency {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TestAllowedPeerAuthenticatorConcurrency.class);
+    private static final long RUN_MILLIS = Long.getLong("peerAuthenticator.stress.millis", 250L);
+    private static final long MIN_OPERATIONS = Long.getLong("peerAuthenticator.stress.minOperations", 200L);
+    private static final long MAX_RUN_MILLIS = Long.getLong("peerAuthenticator.stress.maxMillis", 60000L);
+    private static final int MIN_THREADS = Integer.getInteger("peerAuthenticator.stress.minThreads", 4);
+    private static final int PEER_COUNT = 4;
+
+    @Before
+    public void onlyWhenAskedFor() {
+        assumeTrue("Set peerAuthenticator.stress (e.g. mvn test -Pstress-tests) to run the stress tests",
+                   Boolean.getBoolean("peerAuthenticator.stress"));
+    }
+
+    @Test
+    public void testUnencrypted() throws InterruptedException {
+        stress("NONE", Encryptor.NONE, (peers) -> peers);
+    }
+
+    @Test
+    public void testBasicEncryptor() throws InterruptedException {
+        stress("BASIC", Encryptor.BASIC, (peers) -> peers);
+    }
+
+    @Test
+    public void testStrongEncryptor() throws InterruptedException {
+        stress("STRONG", Encryptor.STRONG, (peers) -> peers);
+    }
+
+    @Test
+    public void testCachingAuthenticator() throws InterruptedException {
+        stress("BASIC+cache", Encryptor.BASIC, (authenticator) -> new CachingAuthenticator<>(new MetricRegistry(),
+                authenticator, CacheBuilderSpec.parse("maximumSize=100, expireAfterAccess=10m")));
+    }
+
+    @Test
+    public void testPeerChangesAppliedMidRun() throws InterruptedException {
+        PasswordEncryptor passwordEncryptor = Encryptor.BASIC.getPasswordEncryptor();
+        AllowedPeerAuthenticator authenticator = new AllowedPeerAuthenticator(peerDAO(passwordEncryptor, false),
+                                                                              passwordEncryptor);
+        // each change re-encrypts one peer's passwords with fresh salts and flips their order
+        Runnable change = new Runnable() {
+            private int changes;
+
+            @Override
+            public void run() {
+                int peer = changes % PEER_COUNT;
+                boolean reversed = (changes++ / PEER_COUNT) % 2 == 0;
+                authenticator.applyPeerChange(PeerChange.updated(peer(passwordEncryptor, peer, reversed)));
+            }
+        };
+        for (int threads : threadCounts()) {
+            runScenario("BASIC+changes", threads, authenticator, change);
+        }
+    }
+
+    private void stress(String scenario, Encryptor encryptor,
+                        Function<Authenticator<BasicCredentials, Peer>, Authenticator<BasicCredentials, Peer>> wrapper)
+            throws InterruptedException {
+        // one PasswordEncryptor shared by every thread, exactly as AllowedPeerConfiguration wires it
+        PasswordEncryptor passwordEncryptor = encryptor.getPasswordEncryptor();
+        Authenticator<BasicCredentials, Peer> authenticator = wrapper.apply(
+                new AllowedPeerAuthenticator(peerDAO(passwordEncryptor, false), passwordEncryptor));
+        for (int threads : threadCounts()) {
+            runScenario(scenario, threads, authenticator, null);
+        }
+    }
+
+    private void runScenario(String scenario, int threads, Authenticator<BasicCredentials, Peer> authenticator,
+                             Runnable change) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder operations = new LongAdder();
+        ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<>();
+
+        for (int i = 0; i < threads; i++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    while (running.get()) {
+                        authenticateOnce(authenticator, failures);
+                        operations.increment();
+                    }
+                }
+                catch (Exception e) {
+                    failures.add("Unexpected exception " + e);
+                }
+                finally {
+                    done.countDown();
+                }
+            });
+        }
+        if (change != null) {
+            executor.execute(() -> {
+                while (running.get()) {
+                    change.run();
+                }
+            });
+        }
+
+        long started = System.nanoTime();
+        start.countDown();
+        Thread.sleep(RUN_MILLIS);
+        while (operations.sum() < MIN_OPERATIONS && failures.isEmpty()
+                && System.nanoTime() - started < TimeUnit.MILLISECONDS.toNanos(MAX_RUN_MILLIS)) {
+            Thread.sleep(10);
+        }
+        running.set(false);
+        assertTrue("Workers did not finish", done.await(1, TimeUnit.MINUTES));
+        long elapsed = System.nanoTime() - started;
+        executor.shutdown();
+        assertTrue("Executor did not terminate", executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        LOGGER.info("{} with {} thread(s): {} authentications, {} per second", scenario, threads, operations.sum(),
+                    String.format("%.0f", operations.sum() / (elapsed / 1e9)));
+        if (operations.sum() < MIN_OPERATIONS) {
+            LOGGER.warn("{} with {} thread(s) only managed {} of {} authentications in {}ms", scenario, threads,
+                        operations.sum(), MIN_OPERATIONS, MAX_RUN_MILLIS);
+        }
+        assertTrue(scenario + " with " + threads + " thread(s) failed: " + failures, failures.isEmpty());
+    }
+
+    /*
+    Picks a random peer and one of: its primary password, its secondary password, a wrong password or an unknown username,
+    and records a failure if the outcome isn't the expected one
+    */
+    private void authenticateOnce(Authenticator<BasicCredentials, Peer> authenticator, ConcurrentLinkedQueue<String> failures)
+            throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int peer = random.nextInt(PEER_COUNT);
+        switch (random.nextInt(4)) {
+            case 0:
+                expect(authenticator, new BasicCredentials(username(peer), password(peer, 0)), username(peer), failures);
+                break;
+            case 1:
+                expect(authenticator, new BasicCredentials(username(peer), password(peer, 1)), username(peer), failures);
+                break;
+            case 2:
+                expect(authenticator, new BasicCredentials(username(peer), password(peer, 0) + "-wrong"), null, failures);
+                break;
+            default:
+                expect(authenticator, new BasicCredentials("unknown" + peer, password(peer, 0)), null, failures);
+                break;
+        }
+    }
+
+    private void expect(Authenticator<BasicCredentials, Peer> authenticator, BasicCredentials credentials, String expected,
+                        ConcurrentLinkedQueue<String> failures) throws Exception {
+        Optional<Peer> peer = authenticator.authenticate(credentials);
+        if (expected == null && peer.isPresent()) {
+            failures.add("False accept of " + credentials.getUsername());
+        }
+        else if (expected != null && !(peer.isPresent() && peer.get().getName().equals(expected))) {
+            failures.add("False reject of " + credentials.getUsername());
+        }
+    }
+
+    private static PeerDAO peerDAO(PasswordEncryptor passwordEncryptor, boolean reversed) {
+        Set<Peer> peers = new LinkedHashSet<>();
+        for (int i = 0; i < PEER_COUNT; i++) {
+            peers.add(peer(passwordEncryptor, i, reversed));
+        }
+        return () -> peers;
+    }
+
+    private static Peer peer(PasswordEncryptor passwordEncryptor, int peer, boolean reversed) {
+        String first = encrypt(passwordEncryptor, password(peer, reversed ? 1 : 0));
+        String second = encrypt(passwordEncryptor, password(peer, reversed ? 0 : 1));
+        return new Peer(username(peer), ImmutableList.of(first, second));
+    }
+
+    private static String encrypt(PasswordEncryptor passwordEncryptor, String password) {
+        return passwordEncryptor == null ? password : passwordEncryptor.encryptPassword(password);
+    }
+
+    private static String username(int peer) {
+        return "peer" + peer;
+    }
+
+    private static String password(int peer, int index) {
+        return "secret-" + peer + "-" + index;
+    }
+
+    private static List<Integer> threadCounts() {
+        List<Integer> counts = new ArrayList<>();
+        // oversubscribe small hosts, so that workers always share the authenticator and its PasswordEncryptor
+        int maxThreads = Math.max(Runtime.getRuntime().availableProcessors(), MIN_THREADS);
+        for (int threads = 1; threads < maxThreads; threads *= 2) {
+            counts.add(threads);
+        }
+        counts.add(maxThreads);
+        return counts;
+    }
+}
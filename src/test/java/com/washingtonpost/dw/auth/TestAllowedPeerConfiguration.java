@@ -2,20 +2,31 @@ package com.washingtonpost.dw.auth;
 
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.cache.CacheBuilderSpec;
+import com.google.common.collect.ImmutableList;
+import com.washingtonpost.dw.auth.capacity.AuthCapacityTask;
 import com.washingtonpost.dw.auth.model.Peer;
 import io.dropwizard.auth.AuthenticationException;
 import io.dropwizard.auth.Authenticator;
 import io.dropwizard.auth.CachingAuthenticator;
 import io.dropwizard.auth.basic.BasicCredentials;
+import io.dropwizard.jackson.Jackson;
+import io.dropwizard.jersey.validation.Validators;
+import io.dropwizard.setup.Environment;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 /**
  * <p>Tests the AllowedPeerConfiguration</p>
  */
 public class TestAllowedPeerConfiguration {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void testCreateAuthenticatorWithCredentialFile() throws AuthenticationException {
         AllowedPeerConfiguration config = new AllowedPeerConfiguration();
@@ -38,6 +49,35 @@ public class TestAllowedPeerConfiguration {
         assertFalse(authenticator.authenticate(new BasicCredentials("foo", "wrong password")).isPresent());
     }
 
+    @Test
+    public void testCreateAuthenticatorWithRotatedBasicEncryptedCredentialFile() throws AuthenticationException {
+        AllowedPeerConfiguration config = new AllowedPeerConfiguration();
+        config.setCredentialFile("peers/test-peers-encrypted-rotation.properties");
+        config.setEncryptor(AllowedPeerConfiguration.Encryptor.BASIC);
+
+        Authenticator<BasicCredentials, Peer> authenticator = config.createAuthenticator();
+        assertTrue(authenticator.authenticate(new BasicCredentials("foo", "newbar")).isPresent());
+        assertTrue(authenticator.authenticate(new BasicCredentials("foo", "bar")).isPresent());
+        assertTrue(authenticator.authenticate(new BasicCredentials("baz", "qux")).isPresent());
+        assertFalse(authenticator.authenticate(new BasicCredentials("foo", "qux")).isPresent());
+    }
+
+    @Test
+    public void testCreateAuthenticatorIgnoresWarmCacheFile() throws AuthenticationException {
+        AllowedPeerConfiguration config = new AllowedPeerConfiguration();
+        config.setCredentialFile("peers/test-peers-encrypted-basic.properties");
+        config.setEncryptor(AllowedPeerConfiguration.Encryptor.BASIC);
+        config.setWarmCacheFile(folder.getRoot().toPath().resolve("warm.snapshot").toString());
+
+        // nothing would ever save the snapshot, so no cache (or key file) is created outside registerAuthenticator
+        MetricRegistry metrics = new MetricRegistry();
+        Authenticator<BasicCredentials, Peer> authenticator = config.createAuthenticator(metrics);
+        assertTrue(authenticator.authenticate(new BasicCredentials("foo", "bar")).isPresent());
+        assertTrue(authenticator.authenticate(new BasicCredentials("foo", "bar")).isPresent());
+        assertEquals(0, metrics.meter(MetricRegistry.name(AllowedPeerAuthenticator.class, "warm-cache-hits")).getCount());
+        assertEquals(0, folder.getRoot().list().length);
+    }
+
     @Test
     public void testCreateAuthenticatorWithStrings() throws AuthenticationException {
         AllowedPeerConfiguration config = new AllowedPeerConfiguration();
@@ -75,4 +115,37 @@ public class TestAllowedPeerConfiguration {
 
         config.createCachingAuthenticator(new MetricRegistry());
     }
+
+    @Test
+    public void testRegisterAuthenticatorWithRealms() {
+        AllowedPeerConfiguration config = new AllowedPeerConfiguration();
+        config.setCredentialFile("peers/test-peers.properties");
+        config.setRealms(ImmutableList.of(realm("foo")));
+
+        Environment environment = newEnvironment();
+        config.registerAuthenticator(environment);
+        assertTrue(environment.healthChecks().runHealthCheck(AuthCapacityTask.NAME).isHealthy());
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testRegisterAuthenticatorWithUnknownRealmPeer() {
+        AllowedPeerConfiguration config = new AllowedPeerConfiguration();
+        config.setCredentialFile("peers/test-peers.properties");
+        config.setRealms(ImmutableList.of(realm("foo", "misspelled")));
+
+        config.registerAuthenticator(newEnvironment());
+    }
+
+    private static RealmConfiguration realm(String... peers) {
+        RealmConfiguration realm = new RealmConfiguration();
+        realm.setName("Admin");
+        realm.setPathPrefix("/admin");
+        realm.setPeers(ImmutableList.copyOf(peers));
+        return realm;
+    }
+
+    private static Environment newEnvironment() {
+        return new Environment("test", Jackson.newObjectMapper(), Validators.newValidator(), new MetricRegistry(),
+                               TestAllowedPeerConfiguration.class.getClassLoader());
+    }
 }
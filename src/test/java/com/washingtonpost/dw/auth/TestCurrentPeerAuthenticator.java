@@ -0,0 +1,113 @@
+package com.washingtonpost.dw.auth;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.CacheBuilderSpec;
+import com.google.common.collect.ImmutableSet;
+import com.washingtonpost.dw.auth.model.Peer;
+import com.washingtonpost.dw.auth.model.PeerChange;
+import io.dropwizard.auth.AuthenticationException;
+import io.dropwizard.auth.CachingAuthenticator;
+import io.dropwizard.auth.basic.BasicCredentials;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.jasypt.util.password.PasswordEncryptor;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * <p>Tests that credentials cached for a peer stop working once that peer changes, even if they were cached after the
+ * change was applied</p>
+ */
+public class TestCurrentPeerAuthenticator {
+
+    private static final BasicCredentials FOO = new BasicCredentials("foo", "secret1");
+
+    @Test
+    public void testCachedCredentialsOfChangedPeersAreRejected() throws AuthenticationException {
+        AllowedPeerAuthenticator allowedPeerAuthenticator = new AllowedPeerAuthenticator(
+                () -> ImmutableSet.of(new Peer("foo", "secret1"), new Peer("bar", "secret2")), null);
+        CachingAuthenticator<BasicCredentials, Peer> cachingAuthenticator = cachingAuthenticator(allowedPeerAuthenticator);
+        CurrentPeerAuthenticator authenticator = new CurrentPeerAuthenticator(cachingAuthenticator,
+                                                                              allowedPeerAuthenticator);
+        assertTrue(authenticator.authenticate(FOO).isPresent());
+        assertTrue(authenticator.authenticate(new BasicCredentials("bar", "secret2")).isPresent());
+
+        // no listener invalidates the cache here, as if the change had raced with the requests that cached them
+        allowedPeerAuthenticator.applyPeerChange(PeerChange.updated(new Peer("foo", "rotated")));
+        allowedPeerAuthenticator.applyPeerChange(PeerChange.removed("bar"));
+        assertFalse(authenticator.authenticate(FOO).isPresent());
+        assertTrue(authenticator.authenticate(new BasicCredentials("foo", "rotated")).isPresent());
+        assertFalse(authenticator.authenticate(new BasicCredentials("bar", "secret2")).isPresent());
+    }
+
+    @Test
+    public void testPeerRemovedDuringPasswordCheckIsNotCached() throws Exception {
+        CountDownLatch checking = new CountDownLatch(1);
+        CountDownLatch removed = new CountDownLatch(1);
+        AllowedPeerAuthenticator allowedPeerAuthenticator = new AllowedPeerAuthenticator(
+                () -> ImmutableSet.of(new Peer("foo", "secret1")), new BlockingPasswordEncryptor(checking, removed));
+        CachingAuthenticator<BasicCredentials, Peer> cachingAuthenticator = cachingAuthenticator(allowedPeerAuthenticator);
+        // wired just like AllowedPeerConfiguration.registerAuthenticator
+        allowedPeerAuthenticator.addPeerChangeListener((change) -> cachingAuthenticator.invalidateAll(
+                (BasicCredentials credentials) -> credentials.getUsername().equals(change.getName())));
+        CurrentPeerAuthenticator authenticator = new CurrentPeerAuthenticator(cachingAuthenticator,
+                                                                              allowedPeerAuthenticator);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Optional<Peer>> inFlight = executor.submit(() -> authenticator.authenticate(FOO));
+            assertTrue(checking.await(10, TimeUnit.SECONDS));
+            allowedPeerAuthenticator.applyPeerChange(PeerChange.removed("foo"));
+            removed.countDown();
+
+            assertFalse(inFlight.get(10, TimeUnit.SECONDS).isPresent());
+            assertFalse(authenticator.authenticate(FOO).isPresent());
+            assertEquals(0, cachingAuthenticator.size());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static CachingAuthenticator<BasicCredentials, Peer> cachingAuthenticator(
+            AllowedPeerAuthenticator allowedPeerAuthenticator) {
+        return new CachingAuthenticator<>(new MetricRegistry(), allowedPeerAuthenticator,
+                                          CacheBuilderSpec.parse("maximumSize=100, expireAfterAccess=10m"));
+    }
+
+    /*
+    Compares plaintext passwords, but holds the first check until told to go on, so a change can be applied mid-check
+    */
+    private static final class BlockingPasswordEncryptor implements PasswordEncryptor {
+        private final CountDownLatch checking;
+        private final CountDownLatch proceed;
+
+        private BlockingPasswordEncryptor(CountDownLatch checking, CountDownLatch proceed) {
+            this.checking = checking;
+            this.proceed = proceed;
+        }
+
+        @Override
+        public String encryptPassword(String password) {
+            return password;
+        }
+
+        @Override
+        public boolean checkPassword(String plainPassword, String encryptedPassword) {
+            this.checking.countDown();
+            try {
+                this.proceed.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return plainPassword.equals(encryptedPassword);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.washingtonpost.dw.auth.cache;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * <p>Tests the VerifiedCredentialCache</p>
+ */
+public class TestVerifiedCredentialCache {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path snapshotFile;
+    private Path keyFile;
+
+    @Before
+    public void setUp() {
+        snapshotFile = folder.getRoot().toPath().resolve("verified.snapshot");
+        keyFile = folder.getRoot().toPath().resolve("verified.key");
+    }
+
+    @Test
+    public void testRecordedCredentialIsVerified() {
+        VerifiedCredentialCache cache = new VerifiedCredentialCache(snapshotFile, keyFile);
+        cache.recordVerified("foo", "bar", "hashOfBar");
+
+        assertTrue(cache.isVerified("foo", "bar", ImmutableList.of("hashOfBar")));
+        assertFalse(cache.isVerified("foo", "wrong", ImmutableList.of("hashOfBar")));
+        assertFalse(cache.isVerified("other", "bar", ImmutableList.of("hashOfBar")));
+    }
+
+    @Test
+    public void testChangedStoredPasswordInvalidatesEntry() {
+        VerifiedCredentialCache cache = new VerifiedCredentialCache(snapshotFile, keyFile);
+        cache.recordVerified("foo", "bar", "hashOfBar");
+
+        assertFalse(cache.isVerified("foo", "bar", ImmutableList.of("newHashOfBar")));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testSnapshotSurvivesRestartWithoutPlaintext() throws Exception {
+        VerifiedCredentialCache cache = new VerifiedCredentialCache(snapshotFile, keyFile);
+        cache.recordVerified("foo", "supersecret", "hashOfSupersecret");
+        cache.stop();
+
+        String snapshot = new String(Files.readAllBytes(snapshotFile), StandardCharsets.ISO_8859_1);
+        assertFalse(snapshot.contains("supersecret"));
+        assertFalse(snapshot.contains("foo"));
+
+        VerifiedCredentialCache restarted = new VerifiedCredentialCache(snapshotFile, keyFile);
+        assertTrue(restarted.isVerified("foo", "supersecret", ImmutableList.of("hashOfSupersecret")));
+    }
+
+    @Test
+    public void testSnapshotWithDifferentKeyStartsCold() throws Exception {
+        VerifiedCredentialCache cache = new VerifiedCredentialCache(snapshotFile, keyFile);
+        cache.recordVerified("foo", "bar", "hashOfBar");
+        cache.stop();
+
+        VerifiedCredentialCache restarted = new VerifiedCredentialCache(snapshotFile,
+                folder.getRoot().toPath().resolve("another.key"));
+        assertEquals(0, restarted.size());
+    }
+
+    @Test
+    public void testRetainAllDropsRemovedPeersAndPasswords() {
+        VerifiedCredentialCache cache = new VerifiedCredentialCache(snapshotFile, keyFile);
+        cache.recordVerified("foo", "bar", "hashOfBar");
+        cache.recordVerified("foo", "baz", "hashOfBaz");
+        cache.recordVerified("gone", "bar", "hashOfBar");
+
+        cache.retainAll(ImmutableMap.of("foo", ImmutableList.of("hashOfBaz")));
+        assertEquals(1, cache.size());
+        assertTrue(cache.isVerified("foo", "baz", ImmutableList.of("hashOfBaz")));
+    }
+}
@@ -0,0 +1,86 @@
+package com.washingtonpost.dw.auth.capacity;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.UniformSnapshot;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * <p>Tests the AuthCapacityEstimator's arithmetic and the health check built on it</p>
+ */
+public class TestAuthCapacityHealthCheck {
+
+    private static final double DELTA = 0.0001;
+
+    @Test
+    public void testEstimateFromLiveRates() {
+        // 2 cores at 10ms per check can do 200 checks/s; 50 checks/s are used by 100 requests/s, 80 of which miss the cache
+        AuthCapacityEstimator estimator = new AuthCapacityEstimator(timer(50, 10), null, meter(100), meter(80), 2);
+        AuthCapacityEstimator.Estimate estimate = estimator.estimate();
+
+        assertTrue(estimate.isMeasured());
+        assertEquals(200, estimate.getPasswordCheckCapacityPerSecond(), DELTA);
+        assertEquals(0.25, estimate.getHashingUtilization(), DELTA);
+        assertEquals(0.2, estimate.getCacheHitRate(), DELTA);
+        assertEquals(0.5, estimate.getPasswordChecksPerRequest(), DELTA);
+        assertEquals(300, estimate.getRemainingRequestsPerSecond(), DELTA);
+    }
+
+    @Test
+    public void testUnmeasuredEstimateIsHealthy() {
+        AuthCapacityEstimator estimator = new AuthCapacityEstimator(timer(0, 0), null, meter(100), meter(100), 2);
+        assertFalse(estimator.estimate().isMeasured());
+        assertTrue(new AuthCapacityHealthCheck(estimator, 0.8).execute().isHealthy());
+    }
+
+    @Test
+    public void testHealthCheckTurnsUnhealthyAboveThreshold() {
+        AuthCapacityEstimator busy = new AuthCapacityEstimator(timer(180, 10), null, meter(180), meter(180), 2);
+        AuthCapacityEstimator quiet = new AuthCapacityEstimator(timer(100, 10), null, meter(100), meter(100), 2);
+
+        assertFalse(new AuthCapacityHealthCheck(busy, 0.8).execute().isHealthy());
+        assertTrue(new AuthCapacityHealthCheck(quiet, 0.8).execute().isHealthy());
+    }
+
+    @Test
+    public void testShadowVerificationUsesHashingCapacity() {
+        // the shadow verifier's 10 checks/s at 50ms take 500ms/s of the 2 cores' 2000ms/s, leaving 150 checks/s at 10ms
+        AuthCapacityEstimator estimator = new AuthCapacityEstimator(timer(100, 10), timer(10, 50), meter(100), meter(100), 2);
+        AuthCapacityEstimator.Estimate estimate = estimator.estimate();
+
+        assertEquals(500, estimate.getShadowHashingMillisPerSecond(), DELTA);
+        assertEquals(150, estimate.getPasswordCheckCapacityPerSecond(), DELTA);
+        assertEquals(0.75, estimate.getHashingUtilization(), DELTA);
+        assertEquals(50, estimate.getRemainingRequestsPerSecond(), DELTA);
+        assertTrue(new AuthCapacityHealthCheck(estimator, 0.8).execute().isHealthy());
+        assertFalse(new AuthCapacityHealthCheck(estimator, 0.7).execute().isHealthy());
+    }
+
+    private static Meter meter(double rate) {
+        return new Meter() {
+            @Override
+            public double getOneMinuteRate() {
+                return rate;
+            }
+        };
+    }
+
+    private static Timer timer(double rate, long millis) {
+        return new Timer() {
+            @Override
+            public double getOneMinuteRate() {
+                return rate;
+            }
+
+            @Override
+            public Snapshot getSnapshot() {
+                return new UniformSnapshot(millis == 0 ? new long[0] : new long[] {TimeUnit.MILLISECONDS.toNanos(millis)});
+            }
+        };
+    }
+}
@@ -0,0 +1,134 @@
+package com.washingtonpost.dw.auth.dao;
+
+import com.google.common.collect.ImmutableList;
+import com.washingtonpost.dw.auth.model.Peer;
+import com.washingtonpost.dw.auth.model.PeerChange;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * <p>Tests the ChangeLogPeerDAO</p>
+ */
+public class TestChangeLogPeerDAO {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path changeLog;
+    private ChangeLogPeerDAO dao;
+    private final List<PeerChange> changes = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        changeLog = folder.getRoot().toPath().resolve("peers.log");
+        append("# allowed peers\nADD alice ENC(a1),ENC(a0) 100\nADD bob b1\nREMOVE bob\nADD carol c1\n");
+        // a long poll interval, so only the test's own poll() calls read the log
+        dao = new ChangeLogPeerDAO(changeLog, 60000);
+    }
+
+    @After
+    public void tearDown() {
+        dao.stop();
+    }
+
+    @Test
+    public void testFindAllReplaysLog() {
+        Set<Peer> peers = dao.findAll();
+        assertEquals(2, peers.size());
+        assertTrue(peers.contains(new Peer("alice", ImmutableList.of("a1", "a0"), 100)));
+        assertTrue(peers.contains(new Peer("carol", "c1")));
+    }
+
+    @Test
+    public void testSubscribersOnlyGetAppendedChanges() throws IOException {
+        dao.findAll();
+        assertTrue(dao.subscribe(changes::add));
+
+        append("UPDATE alice a2\nREMOVE carol\nADD dave d1");
+        dao.poll();
+        assertEquals(ImmutableList.of(PeerChange.updated(new Peer("alice", "a2")), PeerChange.removed("carol")), changes);
+
+        // the partially written last line is only read once it's complete
+        append("\n");
+        dao.poll();
+        assertEquals(PeerChange.added(new Peer("dave", "d1")), changes.get(2));
+        assertEquals(3, changes.size());
+    }
+
+    @Test
+    public void testShrunkLogIsReplayedAsDifference() throws IOException {
+        dao.findAll();
+        dao.subscribe(changes::add);
+
+        Files.write(changeLog, "ADD alice ENC(a1),ENC(a0) 100\nADD erin e1\n".getBytes(StandardCharsets.UTF_8));
+        dao.poll();
+        assertEquals(ImmutableList.of(PeerChange.removed("carol"), PeerChange.added(new Peer("erin", "e1"))), changes);
+    }
+
+    @Test
+    public void testReplacedLogIsReplayedAsDifference() throws IOException {
+        dao.findAll();
+        dao.subscribe(changes::add);
+
+        // a replacement as long as what was read, so only its changed content (or new file key) tells it apart
+        Files.delete(changeLog);
+        append("# allowed peers\nADD alice ENC(a1),ENC(a0) 100\nADD bob b1\nREMOVE bob\nADD erin e1\nADD gina g1\n");
+        dao.poll();
+        assertEquals(ImmutableList.of(PeerChange.removed("carol"), PeerChange.added(new Peer("erin", "e1")),
+                                      PeerChange.added(new Peer("gina", "g1"))), changes);
+
+        // and it's followed from then on
+        append("REMOVE gina\n");
+        dao.poll();
+        assertEquals(PeerChange.removed("gina"), changes.get(3));
+        assertEquals(4, changes.size());
+    }
+
+    @Test
+    public void testMissingLogKeepsPeers() throws IOException {
+        dao.findAll();
+        dao.subscribe(changes::add);
+
+        Files.delete(changeLog);
+        dao.poll();
+        assertTrue(changes.isEmpty());
+
+        // once it's back, what it removed since is still sent
+        append("ADD alice ENC(a1),ENC(a0) 100\n");
+        dao.poll();
+        assertEquals(ImmutableList.of(PeerChange.removed("carol")), changes);
+    }
+
+    @Test
+    public void testMalformedLinesAreSkipped() throws IOException {
+        dao.findAll();
+        dao.subscribe(changes::add);
+
+        append("DELETE alice\nUPDATE alice\nADD frank f1 lots\nREMOVE alice\n");
+        dao.poll();
+        assertEquals(ImmutableList.of(PeerChange.removed("alice")), changes);
+
+        // the bad lines aren't read again
+        append("ADD frank f1\n");
+        dao.poll();
+        assertEquals(ImmutableList.of(PeerChange.removed("alice"), PeerChange.added(new Peer("frank", "f1"))), changes);
+    }
+
+    private void append(String lines) throws IOException {
+        Files.write(changeLog, lines.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+    }
+}
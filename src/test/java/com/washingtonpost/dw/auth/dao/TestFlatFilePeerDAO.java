@@ -4,7 +4,9 @@ import com.washingtonpost.dw.auth.model.Peer;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collection;
+import java.util.Collections;
 import org.junit.Test;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -21,4 +23,26 @@ public class TestFlatFilePeerDAO {
         assertTrue(allPeers.size() == 2);
         assertTrue(allPeers.contains(new Peer("testuser", "testpass")));
     }
+
+    @Test
+    public void testFetchAllWithQuotas() throws IOException {
+        InputStream inputStream = this.getClass().getClassLoader().getResourceAsStream("peers/test-peers-quota.properties");
+        InputStream quotaStream = this.getClass().getClassLoader().getResourceAsStream("peers/test-quotas.properties");
+
+        PeerDAO dao = new FlatFilePeerDAO(inputStream, quotaStream);
+        Collection<Peer> allPeers = dao.findAll();
+        assertEquals(3, allPeers.size());
+        assertTrue(allPeers.contains(new Peer("alice", Collections.singletonList("secret"), 5)));
+        // a username that looks like a quota key is still just a username
+        assertTrue(allPeers.contains(new Peer("alice.quota", "secret2")));
+        assertTrue(allPeers.contains(new Peer("bob", "hunter2")));
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testQuotaForUnknownPeer() throws IOException {
+        InputStream inputStream = this.getClass().getClassLoader().getResourceAsStream("peers/test-peers-quota.properties");
+        InputStream quotaStream = this.getClass().getClassLoader().getResourceAsStream("peers/test-quotas-unknown.properties");
+
+        new FlatFilePeerDAO(inputStream, quotaStream).findAll();
+    }
 }
@@ -1,5 +1,6 @@
 package com.washingtonpost.dw.auth.dao;
 
+import com.google.common.collect.ImmutableList;
 import com.washingtonpost.dw.auth.model.Peer;
 import java.util.Collection;
 import static org.junit.Assert.assertTrue;
@@ -25,6 +26,15 @@ public class TestStringPeerDAO {
         assertTrue(peers.contains(new Peer("frank", " ")));
     }
 
+    @Test
+    public void testMultiplePasswordsPerUser() {
+        PeerDAO dao = new StringPeerDAO("bob;alice", "ENC(abc),ENC(def);ENC(ghi)");
+        Collection<Peer> peers = dao.findAll();
+
+        assertTrue(peers.contains(new Peer("bob", ImmutableList.of("abc", "def"))));
+        assertTrue(peers.contains(new Peer("alice", "ghi")));
+    }
+
     @Test(expected=IllegalStateException.class)
     public void testMultipleIdenticalUsernamesThrowsException() {
         PeerDAO dao = new StringPeerDAO("bob;alice;bob", "1;2;3");
@@ -1,5 +1,7 @@
 package com.washingtonpost.dw.auth.encryptor;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.regex.Matcher;
 import static org.junit.Assert.assertEquals;
 import org.junit.Test;
@@ -17,4 +19,11 @@ public class TestJasyptEncryptor {
             assertEquals("blahblah", matcher.group(1));
         }
     }
+
+    @Test
+    public void testGetEncryptedParts() {
+        assertEquals(Arrays.asList("abc", "def"), JasyptEncryptor.getEncryptedParts("ENC(abc), ENC(def)"));
+        assertEquals(Collections.singletonList("abc"), JasyptEncryptor.getEncryptedParts("ENC(abc)"));
+        assertEquals(Collections.singletonList("plain,text"), JasyptEncryptor.getEncryptedParts("plain,text"));
+    }
 }
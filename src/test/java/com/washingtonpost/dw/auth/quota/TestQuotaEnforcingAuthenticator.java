@@ -0,0 +1,69 @@
+package com.washingtonpost.dw.auth.quota;
+
+import com.google.common.collect.ImmutableList;
+import com.washingtonpost.dw.auth.model.Peer;
+import io.dropwizard.auth.AuthenticationException;
+import io.dropwizard.auth.basic.BasicCredentials;
+import java.util.Optional;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ * <p>Tests the QuotaEnforcingAuthenticator</p>
+ */
+public class TestQuotaEnforcingAuthenticator {
+
+    private final Peer limited = new Peer("limited", ImmutableList.of("secret"), 2);
+    private final Peer unlimited = new Peer("unlimited", "secret");
+
+    private Optional<Peer> lookup(BasicCredentials credentials) {
+        switch (credentials.getUsername()) {
+            case "limited" : return Optional.of(limited);
+            case "unlimited" : return Optional.of(unlimited);
+            default : return Optional.empty();
+        }
+    }
+
+    @Test
+    public void testOverQuotaPeerGets429WithRetryAfter() throws AuthenticationException {
+        QuotaEnforcingAuthenticator authenticator = new QuotaEnforcingAuthenticator(this::lookup, null);
+        BasicCredentials credentials = new BasicCredentials("limited", "secret");
+
+        assertTrue(authenticator.authenticate(credentials).isPresent());
+        assertTrue(authenticator.authenticate(credentials).isPresent());
+        try {
+            authenticator.authenticate(credentials);
+            fail("Expected the third request in a second to be over quota");
+        }
+        catch (WebApplicationException e) {
+            assertEquals(QuotaEnforcingAuthenticator.TOO_MANY_REQUESTS, e.getResponse().getStatus());
+            assertEquals(1L, e.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        }
+    }
+
+    @Test
+    public void testPeersWithoutQuotaAreUnlimitedWithoutDefault() throws AuthenticationException {
+        QuotaEnforcingAuthenticator authenticator = new QuotaEnforcingAuthenticator(this::lookup, null);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(authenticator.authenticate(new BasicCredentials("unlimited", "secret")).isPresent());
+        }
+        assertFalse(authenticator.authenticate(new BasicCredentials("unknown", "secret")).isPresent());
+    }
+
+    @Test(expected=WebApplicationException.class)
+    public void testDefaultQuotaAppliesToPeersWithoutQuota() throws AuthenticationException {
+        QuotaEnforcingAuthenticator authenticator = new QuotaEnforcingAuthenticator(this::lookup, 1);
+        authenticator.authenticate(new BasicCredentials("unlimited", "secret"));
+        authenticator.authenticate(new BasicCredentials("unlimited", "secret"));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testZeroDefaultQuotaThrowsException() {
+        new QuotaEnforcingAuthenticator(this::lookup, 0);
+    }
+}
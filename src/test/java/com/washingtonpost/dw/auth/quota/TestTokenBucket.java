@@ -0,0 +1,32 @@
+package com.washingtonpost.dw.auth.quota;
+
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * <p>Tests the TokenBucket</p>
+ */
+public class TestTokenBucket {
+
+    @Test
+    public void testBurstThenRefill() {
+        TokenBucket bucket = new TokenBucket(4);
+        long now = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals(0, bucket.tryAcquire(now));
+        }
+        long wait = bucket.tryAcquire(now);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(250), wait);
+
+        assertEquals(0, bucket.tryAcquire(now + wait));
+        assertTrue(bucket.tryAcquire(now + wait) > 0);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testNonPositiveRate() {
+        new TokenBucket(0);
+    }
+}
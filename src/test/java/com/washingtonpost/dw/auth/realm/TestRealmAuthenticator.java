@@ -0,0 +1,32 @@
+package com.washingtonpost.dw.auth.realm;
+
+import com.google.common.collect.ImmutableList;
+import com.washingtonpost.dw.auth.model.Peer;
+import io.dropwizard.auth.AuthenticationException;
+import io.dropwizard.auth.Authenticator;
+import io.dropwizard.auth.basic.BasicCredentials;
+import java.util.Optional;
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * <p>Tests the RealmAuthenticator only lets its own subset of peers through to the shared authenticator</p>
+ */
+public class TestRealmAuthenticator {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testOnlyRealmPeersReachSharedAuthenticator() throws AuthenticationException {
+        BasicCredentials admin = new BasicCredentials("admin", "secret");
+        Authenticator<BasicCredentials, Peer> shared = createMock(Authenticator.class);
+        expect(shared.authenticate(admin)).andReturn(Optional.of(new Peer("admin", "secret"))).once();
+        replay(shared);
+
+        RealmAuthenticator authenticator = new RealmAuthenticator(shared, ImmutableList.of("admin"));
+        assertTrue(authenticator.authenticate(admin).isPresent());
+        assertFalse(authenticator.authenticate(new BasicCredentials("public", "secret")).isPresent());
+        verify(shared);
+    }
+}
@@ -0,0 +1,67 @@
+package com.washingtonpost.dw.auth.realm;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.core.UriInfo;
+import static org.easymock.EasyMock.*;
+import org.glassfish.jersey.uri.UriComponent;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+/**
+ * <p>Tests the RealmRoutingAuthFilter picks the right realm for each path</p>
+ */
+public class TestRealmRoutingAuthFilter {
+
+    private final ContainerRequestFilter defaultFilter = (requestContext) -> { };
+    private final ContainerRequestFilter adminFilter = (requestContext) -> { };
+    private final ContainerRequestFilter adminUsersFilter = (requestContext) -> { };
+
+    @Test
+    public void testLongestPrefixWins() {
+        RealmRoutingAuthFilter filter = new RealmRoutingAuthFilter(defaultFilter)
+                .addRealm("/admin", adminFilter)
+                .addRealm("/admin/users/", adminUsersFilter);
+
+        assertSame(adminFilter, filter.filterFor("admin"));
+        assertSame(adminFilter, filter.filterFor("admin/settings"));
+        assertSame(adminUsersFilter, filter.filterFor("/admin/users/42"));
+        assertSame(defaultFilter, filter.filterFor("administrators"));
+        assertSame(defaultFilter, filter.filterFor("api/stuff"));
+    }
+
+    @Test
+    public void testMatrixParametersDontEscapeRealm() throws IOException {
+        AtomicReference<ContainerRequestFilter> used = new AtomicReference<>();
+        ContainerRequestFilter admin = (requestContext) -> used.set(adminFilter);
+        ContainerRequestFilter fallback = (requestContext) -> used.set(defaultFilter);
+        RealmRoutingAuthFilter filter = new RealmRoutingAuthFilter(fallback).addRealm("/admin", admin);
+
+        for (String path : new String[] {"admin;x=1/users", "admin;x=1", "/admin;/users;y=2"}) {
+            used.set(null);
+            filter.filter(requestFor(path));
+            assertSame(path, adminFilter, used.get());
+        }
+        filter.filter(requestFor("administrators;x=1"));
+        assertSame(defaultFilter, used.get());
+    }
+
+    /*
+    A request whose path segments are parsed (and decoded) just as Jersey parses them
+    */
+    private static ContainerRequestContext requestFor(String path) {
+        UriInfo uriInfo = createMock(UriInfo.class);
+        expect(uriInfo.getPathSegments()).andReturn(UriComponent.decodePath(path, true)).anyTimes();
+        ContainerRequestContext requestContext = createMock(ContainerRequestContext.class);
+        expect(requestContext.getUriInfo()).andReturn(uriInfo).anyTimes();
+        replay(uriInfo, requestContext);
+        return requestContext;
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testDuplicatePrefixThrowsException() {
+        new RealmRoutingAuthFilter(defaultFilter).addRealm("/admin", adminFilter).addRealm("admin/", adminUsersFilter);
+    }
+}
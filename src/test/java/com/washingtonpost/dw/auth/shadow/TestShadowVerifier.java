@@ -0,0 +1,111 @@
+package com.washingtonpost.dw.auth.shadow;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.CacheBuilderSpec;
+import com.google.common.collect.ImmutableSet;
+import com.washingtonpost.dw.auth.model.Peer;
+import io.dropwizard.auth.Authenticator;
+import io.dropwizard.auth.CachingAuthenticator;
+import io.dropwizard.auth.basic.BasicCredentials;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * <p>Tests the ShadowVerifier records agreement, false accepts and false rejects without ever blocking its caller</p>
+ */
+public class TestShadowVerifier {
+
+    private final MetricRegistry metrics = new MetricRegistry();
+    private ShadowVerifier verifier;
+
+    @After
+    public void tearDown() {
+        verifier.stop();
+    }
+
+    @Test
+    public void testAgreementsAndDisagreementsAreRecorded() throws InterruptedException {
+        // the candidate only knows "foo" and "qux"
+        Authenticator<BasicCredentials, Peer> candidate = (credentials) -> ImmutableSet.of("foo", "qux")
+                .contains(credentials.getUsername()) ? Optional.of(new Peer(credentials.getUsername(), "secret"))
+                                                     : Optional.empty();
+        verifier = new ShadowVerifier(candidate, 1.0, 1, 10, metrics);
+
+        verifier.sample(new BasicCredentials("foo", "secret"), true);
+        verifier.sample(new BasicCredentials("bar", "secret"), true);
+        verifier.sample(new BasicCredentials("baz", "secret"), false);
+        verifier.sample(new BasicCredentials("qux", "secret"), false);
+
+        awaitChecks(4);
+        assertEquals(2, metrics.meter(MetricRegistry.name(ShadowVerifier.class, "agreements")).getCount());
+        assertEquals(1, metrics.meter(MetricRegistry.name(ShadowVerifier.class, "candidate-false-accepts")).getCount());
+        assertEquals(1, metrics.meter(MetricRegistry.name(ShadowVerifier.class, "candidate-false-rejects")).getCount());
+    }
+
+    @Test
+    public void testCachedAuthenticationsAreSampled() throws Exception {
+        AtomicInteger underlyingCalls = new AtomicInteger();
+        Authenticator<BasicCredentials, Peer> current = (credentials) -> {
+            underlyingCalls.incrementAndGet();
+            return Optional.of(new Peer(credentials.getUsername(), "secret"));
+        };
+        verifier = new ShadowVerifier(current, 1.0, 1, 10, metrics);
+        Authenticator<BasicCredentials, Peer> authenticator = new ShadowSamplingAuthenticator(
+                new CachingAuthenticator<>(metrics, current, CacheBuilderSpec.parse("maximumSize=10")), verifier);
+
+        for (int i = 0; i < 3; i++) {
+            authenticator.authenticate(new BasicCredentials("foo", "secret"));
+        }
+        awaitChecks(3);
+        // one miss through the cache, plus the three re-checks of the candidate
+        assertEquals(4, underlyingCalls.get());
+        assertEquals(3, metrics.meter(MetricRegistry.name(ShadowVerifier.class, "agreements")).getCount());
+    }
+
+    @Test
+    public void testSamplesAreDroppedWhenQueueIsFull() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        Authenticator<BasicCredentials, Peer> candidate = (credentials) -> {
+            try {
+                release.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Optional.empty();
+        };
+        verifier = new ShadowVerifier(candidate, 1.0, 1, 1, metrics);
+
+        // one check runs (and blocks), one waits in the queue, the rest are dropped
+        for (int i = 0; i < 5; i++) {
+            verifier.sample(new BasicCredentials("foo", "secret"), false);
+        }
+        assertTrue(metrics.meter(MetricRegistry.name(ShadowVerifier.class, "dropped")).getCount() >= 3);
+        release.countDown();
+    }
+
+    @Test
+    public void testZeroSampleRateChecksNothing() throws InterruptedException {
+        verifier = new ShadowVerifier((credentials) -> Optional.empty(), 0.0, 1, 10, metrics);
+        for (int i = 0; i < 100; i++) {
+            verifier.sample(new BasicCredentials("foo", "secret"), false);
+        }
+        verifier.stop();
+        assertEquals(0, metrics.timer(MetricRegistry.name(ShadowVerifier.class, "checks")).getCount());
+    }
+
+    private void awaitChecks(long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (metrics.timer(MetricRegistry.name(ShadowVerifier.class, "checks")).getCount() < count
+                && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, metrics.timer(MetricRegistry.name(ShadowVerifier.class, "checks")).getCount());
+    }
+}